@@ -0,0 +1,152 @@
+package me.petercsala.NagyHazi;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Packs rectangles into square pages, shelf by shelf
+ * <p>
+ * Every rectangle goes to the right of the previous one, or onto a new shelf under them if the
+ * row is full. Packing the rectangles tallest first keeps the wasted space low.
+ */
+public class AtlasPacker {
+    /**
+     * The size of the sides of a page
+     */
+    private final int pageSize;
+    /**
+     * The used height of every page
+     */
+    private final List<Integer> pageHeights = new ArrayList<>();
+    /**
+     * The x position of the next rectangle on the current shelf
+     */
+    private int shelfX = 0;
+    /**
+     * The y position of the current shelf
+     */
+    private int shelfY = 0;
+    /**
+     * The height of the tallest rectangle on the current shelf
+     */
+    private int shelfHeight = 0;
+
+    /**
+     * Constructor
+     *
+     * @param pageSize The size of the sides of a page
+     */
+    public AtlasPacker(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Find a place for a rectangle
+     *
+     * @param width  The width of the rectangle
+     * @param height The height of the rectangle
+     * @return The place of the rectangle
+     */
+    public Region pack(int width, int height) {
+        if (width > pageSize || height > pageSize) {
+            throw new RuntimeException("A " + width + "x" + height + " sprite doesn't fit into an atlas page!");
+        }
+        if (pageHeights.isEmpty()) {
+            newPage();
+        }
+        if (shelfX + width > pageSize) {
+            shelfY += shelfHeight;
+            shelfX = 0;
+            shelfHeight = 0;
+        }
+        if (shelfY + height > pageSize) {
+            newPage();
+        }
+        Region region = new Region(pageHeights.size() - 1, shelfX, shelfY, width, height);
+        shelfX += width;
+        shelfHeight = Math.max(shelfHeight, height);
+        pageHeights.set(region.page, Math.max(pageHeights.get(region.page), shelfY + shelfHeight));
+        return region;
+    }
+
+    /**
+     * Start packing into a new page
+     */
+    private void newPage() {
+        pageHeights.add(0);
+        shelfX = 0;
+        shelfY = 0;
+        shelfHeight = 0;
+    }
+
+    /**
+     * Get the number of pages used
+     *
+     * @return The number of pages
+     */
+    public int getPageCount() {
+        return pageHeights.size();
+    }
+
+    /**
+     * Get the used height of a page
+     *
+     * @param page The index of the page
+     * @return The height
+     */
+    public int getPageHeight(int page) {
+        return pageHeights.get(page);
+    }
+
+    /**
+     * Get the size of the sides of a page
+     *
+     * @return The size
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * The place of a rectangle in the pages
+     */
+    public static class Region {
+        /**
+         * The index of the page
+         */
+        public final int page;
+        /**
+         * The x position in the page
+         */
+        public final int x;
+        /**
+         * The y position in the page
+         */
+        public final int y;
+        /**
+         * The width of the rectangle
+         */
+        public final int width;
+        /**
+         * The height of the rectangle
+         */
+        public final int height;
+
+        /**
+         * Constructor
+         *
+         * @param page   The index of the page
+         * @param x      The x position in the page
+         * @param y      The y position in the page
+         * @param width  The width of the rectangle
+         * @param height The height of the rectangle
+         */
+        public Region(int page, int x, int y, int width, int height) {
+            this.page = page;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+    }
+}
@@ -1,9 +1,5 @@
 package me.petercsala.NagyHazi;
 
-import javafx.scene.canvas.GraphicsContext;
-import javafx.scene.image.Image;
-import javafx.scene.image.ImageView;
-
 import java.awt.*;
 
 /**
@@ -48,6 +44,29 @@ public class Building extends Placeable {
      */
     private long areaDecor = 0;
 
+    /**
+     * Constructor
+     */
+    public Building() {
+    }
+
+    /**
+     * Constructor setting what the building needs and provides, for buildings made without a sprite
+     *
+     * @param workplaces          The number of workplaces provided by the building
+     * @param accommodation       The number of people living in the building
+     * @param producedWater       The amount of water produced by the building
+     * @param producedWaste       The amount of waste generated by the building
+     * @param producedElectricity The amount of electricity produced by the building
+     */
+    Building(long workplaces, long accommodation, long producedWater, long producedWaste, long producedElectricity) {
+        this.workplaces = workplaces;
+        this.accommodation = accommodation;
+        this.producedWater = producedWater;
+        this.producedWaste = producedWaste;
+        this.producedElectricity = producedElectricity;
+    }
+
     /**
      * Clone the building as a placeable
      *
@@ -61,7 +80,7 @@ public class Building extends Placeable {
         copy.description = description;
         copy.size = size;
         copy.cost = cost;
-        copy.sprite = sprite;
+        copy.spritePath = spritePath;
         copy.workplaces = workplaces;
         copy.accommodation = accommodation;
         copy.producedWater = producedWater;
@@ -88,7 +107,7 @@ public class Building extends Placeable {
         description = placeable.description;
         size = placeable.size;
         cost = placeable.cost;
-        sprite = placeable.sprite;
+        spritePath = placeable.spritePath;
         workplaces = building.workplaces;
         accommodation = building.accommodation;
         producedWater = building.producedWater;
@@ -97,18 +116,6 @@ public class Building extends Placeable {
         decorProvided = building.decorProvided;
     }
 
-    /**
-     * Draw the building
-     *
-     * @param ctx    The graphics context
-     * @param camera The camera in the scene
-     */
-    @Override
-    protected void drawSelf(GraphicsContext ctx, Camera camera) {
-        Point position = camera.worldToCameraSpace(actualPos.getRealPos());
-        ctx.drawImage(sprite, position.x, position.y);
-    }
-
     /**
      * Get the happiness from the decor in the area
      *
@@ -126,7 +133,7 @@ public class Building extends Placeable {
      */
     @Override
     protected double getWaterHappiness() {
-        if (producedWater > 0) {
+        if (producedWater >= 0) {
             return 1;
         }
         double waterRatio = (double) receivedWater / -producedWater;
@@ -140,7 +147,7 @@ public class Building extends Placeable {
      */
     @Override
     protected double getWasteHappiness() {
-        if (producedWaste < 0) {
+        if (producedWaste <= 0) {
             return 1;
         }
         double wasteRatio = (double) handledWaste / producedWaste;
@@ -260,6 +267,57 @@ public class Building extends Placeable {
         areaDecor += decor;
     }
 
+    /**
+     * Get the amount of water the building received
+     *
+     * @return The received water
+     */
+    public long getReceivedWater() {
+        return receivedWater;
+    }
+
+    /**
+     * Get the amount of waste taken away from the building
+     *
+     * @return The handled waste
+     */
+    public long getHandledWaste() {
+        return handledWaste;
+    }
+
+    /**
+     * Is the electricity requirement of the building met?
+     *
+     * @return If the electricity is provided
+     */
+    public boolean isElectricityProvided() {
+        return electricityProvided;
+    }
+
+    /**
+     * Get the decor in the area of the building
+     *
+     * @return The decor
+     */
+    public long getAreaDecor() {
+        return areaDecor;
+    }
+
+    /**
+     * Restore the resources and the decor of the building as they were saved
+     *
+     * @param receivedWater       The received water
+     * @param handledWaste        The handled waste
+     * @param electricityProvided Is the electricity provided?
+     * @param areaDecor           The decor in the area
+     */
+    void restoreResources(long receivedWater, long handledWaste, boolean electricityProvided, long areaDecor) {
+        this.receivedWater = receivedWater;
+        this.handledWaste = handledWaste;
+        this.electricityProvided = electricityProvided;
+        this.areaDecor = areaDecor;
+    }
+
     /**
      * Get the water production of the building
      *
@@ -310,19 +368,6 @@ public class Building extends Placeable {
         return false;
     }
 
-    /**
-     * Get the graphic that should be placed on the building button
-     *
-     * @return The graphic
-     */
-    @Override
-    public ImageView getButtonGraphic() {
-        ImageView imageView = new ImageView(sprite);
-        imageView.setFitWidth(32);
-        imageView.setFitHeight(32);
-        return imageView;
-    }
-
     /**
      * Check if this is equal to an object
      * @param obj The other object
@@ -378,8 +423,9 @@ public class Building extends Placeable {
          * @param spritePath The path
          */
         public void setSprite(String spritePath) {
-            building.sprite = new Image(String.valueOf(getClass().getClassLoader().getResource("userResources/" + spritePath)));
-            building.size = new Point((int) building.sprite.getWidth() / 16, (int) building.sprite.getHeight() / 16);
+            building.spritePath = spritePath;
+            Point spriteSize = readSpriteSize(spritePath);
+            building.size = new Point(spriteSize.x / 16, spriteSize.y / 16);
         }
 
         /**
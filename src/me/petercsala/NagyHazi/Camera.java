@@ -45,6 +45,24 @@ public class Camera {
         position.y = Math.max(bounds.y, Math.min(bounds.height + bounds.y - (int) boundPane.getHeight(), position.y + offset.y));
     }
 
+    /**
+     * Get the x position of the camera in the world
+     *
+     * @return The x position
+     */
+    public float getX() {
+        return position.x;
+    }
+
+    /**
+     * Get the y position of the camera in the world
+     *
+     * @return The y position
+     */
+    public float getY() {
+        return position.y;
+    }
+
     /**
      * Transform a point in the world to be relative to the camera
      *
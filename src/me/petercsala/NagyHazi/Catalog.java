@@ -0,0 +1,93 @@
+package me.petercsala.NagyHazi;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The placeables that can be built, shared by the maps and the saves referring to them by name
+ */
+public class Catalog {
+    /**
+     * The placeables, in the order they were loaded
+     */
+    private static List<Placeable> placeables = new ArrayList<>();
+    /**
+     * The placeables by their name
+     */
+    private static HashMap<String, Placeable> byName = new HashMap<>();
+    /**
+     * The width of the widest and the height of the tallest placeable
+     */
+    private static Point maxSize = new Point(1, 1);
+
+    /**
+     * Load the placeables from an xml file
+     *
+     * @param path Path to the xml file
+     */
+    public static void load(String path) {
+        List<Placeable> loaded = Placeable.loadPlaceables(path);
+        if (loaded == null) {
+            throw new RuntimeException("Couldn't load placeables!");
+        }
+        set(loaded);
+    }
+
+    /**
+     * Replace the placeables
+     *
+     * @param loaded The new placeables
+     */
+    public static void set(List<Placeable> loaded) {
+        placeables = new ArrayList<>(loaded);
+        byName = new HashMap<>();
+        Point largest = new Point(1, 1);
+        for (Placeable placeable : placeables) {
+            byName.putIfAbsent(placeable.name, placeable);
+            largest.x = Math.max(largest.x, placeable.size.x);
+            largest.y = Math.max(largest.y, placeable.size.y);
+        }
+        maxSize = largest;
+    }
+
+    /**
+     * Get every placeable
+     *
+     * @return The placeables, in the order they were loaded
+     */
+    public static List<Placeable> getPlaceables() {
+        return Collections.unmodifiableList(placeables);
+    }
+
+    /**
+     * Get the size of the largest placeable
+     *
+     * @return The width of the widest and the height of the tallest placeable in tiles
+     */
+    public static Point getMaxSize() {
+        return new Point(maxSize);
+    }
+
+    /**
+     * Get a placeable by its index
+     *
+     * @param index The index of the placeable, in the order they were loaded
+     * @return The placeable
+     */
+    public static Placeable get(int index) {
+        return placeables.get(index);
+    }
+
+    /**
+     * Get a placeable with a given name
+     *
+     * @param name The name of the placeable
+     * @return The found placeable or null
+     */
+    public static Placeable get(String name) {
+        return byName.get(name);
+    }
+}
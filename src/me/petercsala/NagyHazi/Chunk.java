@@ -0,0 +1,83 @@
+package me.petercsala.NagyHazi;
+
+/**
+ * A square block of cells of the map
+ * <p>
+ * The cells are stored in primitive arrays rather than objects, so a chunk is a few
+ * kilobytes, and sweeping through it is a linear scan.
+ */
+public class Chunk {
+    /**
+     * The size of the sides of a chunk in tiles
+     */
+    public static final int SIZE = 32;
+
+    /**
+     * The id of the instance on every cell, row by row, 0 for empty cells
+     */
+    private final int[] ids = new int[SIZE * SIZE];
+    /**
+     * A bit for every cell, set if a road is on it
+     */
+    private final long[] roads = new long[SIZE * SIZE / 64];
+    /**
+     * The number of cells with an instance on them
+     */
+    private int occupied = 0;
+
+    /**
+     * Get the instance id of a cell
+     *
+     * @param x The x position inside the chunk
+     * @param y The y position inside the chunk
+     * @return The instance id, 0 for an empty cell
+     */
+    public int getId(int x, int y) {
+        return ids[y * SIZE + x];
+    }
+
+    /**
+     * Is there a road on a cell?
+     *
+     * @param x The x position inside the chunk
+     * @param y The y position inside the chunk
+     * @return If there is a road
+     */
+    public boolean isRoad(int x, int y) {
+        int index = y * SIZE + x;
+        return (roads[index >> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Set the contents of a cell
+     *
+     * @param x    The x position inside the chunk
+     * @param y    The y position inside the chunk
+     * @param id   The instance id, 0 to clear the cell
+     * @param road Is the instance a road
+     */
+    public void set(int x, int y, int id, boolean road) {
+        int index = y * SIZE + x;
+        if (ids[index] != 0) {
+            occupied--;
+        }
+        if (id != 0) {
+            occupied++;
+        }
+        ids[index] = id;
+        if (road) {
+            roads[index >> 6] |= 1L << index;
+        } else {
+            roads[index >> 6] &= ~(1L << index);
+        }
+    }
+
+    /**
+     * Is there nothing placed in the chunk?
+     *
+     * @return If the chunk is empty
+     */
+    public boolean isEmpty() {
+        return occupied == 0;
+    }
+}
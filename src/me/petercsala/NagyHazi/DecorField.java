@@ -0,0 +1,241 @@
+package me.petercsala.NagyHazi;
+
+import java.awt.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The decor of every point of a map, kept as the sum of the kernels stamped by the decor sources
+ * <p>
+ * The field is sampled every half tile, as the center of every placeable falls on such a point.
+ * The samples are stored in blocks that are only allocated while a kernel covers them.
+ */
+public class DecorField {
+    /**
+     * The size of the sides of a block in samples
+     */
+    static final int BLOCK_SIZE = 64;
+    /**
+     * The distance between two samples in world space
+     */
+    static final int STEP = 8;
+
+    /**
+     * The kernels already computed, by the decor provided
+     */
+    private static final ConcurrentHashMap<Long, Kernel> kernels = new ConcurrentHashMap<>();
+
+    /**
+     * The number of samples in a row
+     */
+    private final int width;
+    /**
+     * The number of samples in a column
+     */
+    private final int height;
+    /**
+     * The number of blocks in a row
+     */
+    private final int blocksX;
+    /**
+     * The samples of every block, row by row, null while no kernel covers the block
+     */
+    private final long[][] blocks;
+    /**
+     * The number of kernels covering every block
+     */
+    private final int[] sources;
+
+    /**
+     * Constructor
+     *
+     * @param mapSize The size of the map in tiles
+     */
+    public DecorField(Point mapSize) {
+        width = mapSize.x * 2 + 1;
+        height = mapSize.y * 2 + 1;
+        blocksX = (width + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int blocksY = (height + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        blocks = new long[blocksX * blocksY][];
+        sources = new int[blocksX * blocksY];
+    }
+
+    /**
+     * Add the kernel of a placeable to the field
+     *
+     * @param placeable The placeable
+     */
+    public void add(Placeable placeable) {
+        stamp(placeable, 1);
+    }
+
+    /**
+     * Take the kernel of a placeable out of the field
+     *
+     * @param placeable The placeable
+     */
+    public void remove(Placeable placeable) {
+        stamp(placeable, -1);
+    }
+
+    /**
+     * Add or subtract the kernel of a placeable, block by block
+     *
+     * @param placeable The placeable
+     * @param sign      1 to add the kernel, -1 to subtract it
+     */
+    private void stamp(Placeable placeable, int sign) {
+        Kernel kernel = getKernel(placeable.decorProvided);
+        if (kernel == null) {
+            return;
+        }
+        Point center = placeable.getCenter();
+        int centerX = center.x / STEP;
+        int centerY = center.y / STEP;
+        int minX = Math.max(0, centerX - kernel.radius);
+        int minY = Math.max(0, centerY - kernel.radius);
+        int maxX = Math.min(width - 1, centerX + kernel.radius);
+        int maxY = Math.min(height - 1, centerY + kernel.radius);
+
+        for (int blockY = minY / BLOCK_SIZE; blockY <= maxY / BLOCK_SIZE; blockY++) {
+            for (int blockX = minX / BLOCK_SIZE; blockX <= maxX / BLOCK_SIZE; blockX++) {
+                int index = blockY * blocksX + blockX;
+                if (blocks[index] == null) {
+                    blocks[index] = new long[BLOCK_SIZE * BLOCK_SIZE];
+                }
+                long[] block = blocks[index];
+                int fromX = Math.max(minX, blockX * BLOCK_SIZE);
+                int toX = Math.min(maxX, blockX * BLOCK_SIZE + BLOCK_SIZE - 1);
+                int fromY = Math.max(minY, blockY * BLOCK_SIZE);
+                int toY = Math.min(maxY, blockY * BLOCK_SIZE + BLOCK_SIZE - 1);
+                for (int y = fromY; y <= toY; y++) {
+                    int row = (y - blockY * BLOCK_SIZE) * BLOCK_SIZE - blockX * BLOCK_SIZE;
+                    for (int x = fromX; x <= toX; x++) {
+                        block[row + x] += sign * kernel.get(x - centerX, y - centerY);
+                    }
+                }
+
+                sources[index] += sign;
+                if (sources[index] == 0) {
+                    blocks[index] = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the decor at a point
+     *
+     * @param pos The point in world space
+     * @return The decor
+     */
+    public long get(Point pos) {
+        int x = pos.x / STEP;
+        int y = pos.y / STEP;
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            return 0;
+        }
+        long[] block = blocks[y / BLOCK_SIZE * blocksX + x / BLOCK_SIZE];
+        if (block == null) {
+            return 0;
+        }
+        return block[y % BLOCK_SIZE * BLOCK_SIZE + x % BLOCK_SIZE];
+    }
+
+    /**
+     * Get the decor a placeable provides at a point
+     *
+     * @param placeable The placeable
+     * @param pos       The point in world space
+     * @return The decor
+     */
+    public long getProvided(Placeable placeable, Point pos) {
+        Kernel kernel = getKernel(placeable.decorProvided);
+        if (kernel == null) {
+            return 0;
+        }
+        Point center = placeable.getCenter();
+        return kernel.get(pos.x / STEP - center.x / STEP, pos.y / STEP - center.y / STEP);
+    }
+
+    /**
+     * Remove every kernel from the field
+     */
+    public void clear() {
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = null;
+            sources[i] = 0;
+        }
+    }
+
+    /**
+     * Get the number of blocks allocated
+     *
+     * @return The number of blocks
+     */
+    int getBlockCount() {
+        int count = 0;
+        for (long[] block : blocks) {
+            if (block != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get the kernel of a decor value, computing it on first use
+     *
+     * @param decor The decor provided
+     * @return The kernel, or null if it provides no decor
+     */
+    static Kernel getKernel(long decor) {
+        if (decor == 0) {
+            return null;
+        }
+        return kernels.computeIfAbsent(decor, Kernel::new);
+    }
+
+    /**
+     * The decor provided by a source around its center, truncated where it drops to zero
+     */
+    static class Kernel {
+        /**
+         * The distance from the center to the sides in samples
+         */
+        final int radius;
+        /**
+         * The decor at every sample, row by row
+         */
+        private final long[] values;
+
+        /**
+         * Constructor
+         *
+         * @param decor The decor provided
+         */
+        Kernel(long decor) {
+            radius = (int) (Placeable.getDecorRadius(decor) / STEP);
+            int side = radius * 2 + 1;
+            values = new long[side * side];
+            for (int y = -radius; y <= radius; y++) {
+                for (int x = -radius; x <= radius; x++) {
+                    values[(y + radius) * side + x + radius] = Placeable.getProvidedDecor(decor, STEP * STEP * (x * x + y * y));
+                }
+            }
+        }
+
+        /**
+         * Get the decor at an offset from the center
+         *
+         * @param x The x offset in samples
+         * @param y The y offset in samples
+         * @return The decor, 0 outside the kernel
+         */
+        long get(int x, int y) {
+            if (x < -radius || x > radius || y < -radius || y > radius) {
+                return 0;
+            }
+            return values[(y + radius) * (radius * 2 + 1) + x + radius];
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package me.petercsala.NagyHazi;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The edits made to a map since it was last saved in full
+ */
+public class EditJournal {
+    /**
+     * A placeable was placed
+     */
+    public static final int PLACE = 0;
+    /**
+     * A placeable was removed
+     */
+    public static final int REMOVE = 1;
+    /**
+     * The map was reset
+     */
+    public static final int RESET = 2;
+
+    /**
+     * The edits, in the order they were made
+     */
+    private List<Edit> edits = new ArrayList<>();
+
+    /**
+     * Record a placed placeable
+     *
+     * @param placeable The placed instance
+     */
+    public void placed(Placeable placeable) {
+        edits.add(new Edit(PLACE, placeable.getActualPos().x, placeable.getActualPos().y, placeable.name));
+    }
+
+    /**
+     * Record a removed placeable
+     *
+     * @param placeable The removed instance
+     */
+    public void removed(Placeable placeable) {
+        edits.add(new Edit(REMOVE, placeable.getActualPos().x, placeable.getActualPos().y, null));
+    }
+
+    /**
+     * Record a reset of the map, making every earlier edit pointless
+     */
+    public void reset() {
+        edits.clear();
+        edits.add(new Edit(RESET, 0, 0, null));
+    }
+
+    /**
+     * Get the number of edits
+     *
+     * @return The number of edits
+     */
+    public int size() {
+        return edits.size();
+    }
+
+    /**
+     * Forget every edit, once the map was saved in full
+     */
+    public void clear() {
+        edits = new ArrayList<>();
+    }
+
+    /**
+     * Take the edits out of the journal
+     *
+     * @return The edits, in the order they were made
+     */
+    public List<Edit> take() {
+        List<Edit> taken = edits;
+        edits = new ArrayList<>();
+        return taken;
+    }
+
+    /**
+     * An edit of the map
+     */
+    public static class Edit {
+        /**
+         * The kind of the edit
+         */
+        public final int op;
+        /**
+         * The x position of the edited instance
+         */
+        public final int x;
+        /**
+         * The y position of the edited instance
+         */
+        public final int y;
+        /**
+         * The name of the placed placeable, null for other edits
+         */
+        public final String name;
+
+        /**
+         * Constructor
+         *
+         * @param op   The kind of the edit
+         * @param x    The x position of the edited instance
+         * @param y    The y position of the edited instance
+         * @param name The name of the placed placeable, null for other edits
+         */
+        public Edit(int op, int x, int y, String name) {
+            this.op = op;
+            this.x = x;
+            this.y = y;
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package me.petercsala.NagyHazi;
+
+import java.awt.*;
+import java.util.List;
+
+/**
+ * An immutable copy of everything needed to draw a frame, taken at the end of a tick
+ * <p>
+ * Only the chunks around the view of the player are copied, every chunk into its own immutable
+ * slice holding the instances whose top left tile is in the chunk. A slice is shared with the
+ * next snapshot as long as the version of its chunk stays the same, so a snapshot only costs
+ * as much as the view is large and as much as changed in it.
+ */
+public class FrameSnapshot {
+    /**
+     * The number of chunks copied around the view on every side, so chunks coming into view
+     * before the next snapshot can be drawn
+     */
+    static final int MARGIN = 1;
+
+    /**
+     * The number of chunks in a row of the map
+     */
+    private final int chunksX;
+    /**
+     * The number of chunks in a column of the map
+     */
+    private final int chunksY;
+    /**
+     * The x position of the first chunk copied
+     */
+    private final int minChunkX;
+    /**
+     * The y position of the first chunk copied
+     */
+    private final int minChunkY;
+    /**
+     * The x position of the last chunk copied
+     */
+    private final int maxChunkX;
+    /**
+     * The y position of the last chunk copied
+     */
+    private final int maxChunkY;
+    /**
+     * The slices of the copied chunks, row by row
+     */
+    private final Slice[] slices;
+    /**
+     * The width of the widest instance copied in tiles
+     */
+    private final int maxWidth;
+    /**
+     * The height of the tallest instance copied in tiles
+     */
+    private final int maxHeight;
+    /**
+     * The balance of the player
+     */
+    private final long money;
+    /**
+     * The population
+     */
+    private final long population;
+    /**
+     * The happiness of the population
+     */
+    private final double happiness;
+    /**
+     * The current date
+     */
+    private final String date;
+
+    /**
+     * Constructor
+     *
+     * @param map      The map to copy
+     * @param gameDate The game time to copy
+     * @param view     The tiles the player sees
+     * @param previous The previous snapshot to take the unchanged slices from, null if there is none
+     */
+    public FrameSnapshot(Map map, GameDate gameDate, Rectangle view, FrameSnapshot previous) {
+        Point mapSize = map.getMapSize();
+        Point reach = getReach(Catalog.getMaxSize());
+        chunksX = (mapSize.x + Chunk.SIZE - 1) / Chunk.SIZE;
+        chunksY = (mapSize.y + Chunk.SIZE - 1) / Chunk.SIZE;
+        minChunkX = Math.max(0, Math.floorDiv(view.x, Chunk.SIZE) - MARGIN - reach.x);
+        minChunkY = Math.max(0, Math.floorDiv(view.y, Chunk.SIZE) - MARGIN - reach.y);
+        maxChunkX = Math.min(chunksX - 1, Math.floorDiv(view.x + view.width, Chunk.SIZE) + MARGIN);
+        maxChunkY = Math.min(chunksY - 1, Math.floorDiv(view.y + view.height, Chunk.SIZE) + MARGIN);
+
+        int width = Math.max(0, maxChunkX - minChunkX + 1);
+        int height = Math.max(0, maxChunkY - minChunkY + 1);
+        slices = new Slice[width * height];
+        int widest = 0;
+        int tallest = 0;
+        for (int chunkY = minChunkY; chunkY <= maxChunkY; chunkY++) {
+            for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+                long version = map.getChunkVersion(chunkX, chunkY);
+                Slice slice = previous == null ? null : previous.getSlice(chunkX, chunkY);
+                if (slice == null || slice.version != version) {
+                    slice = new Slice(map.getChunkInstances(chunkX, chunkY), version);
+                }
+                slices[(chunkY - minChunkY) * width + chunkX - minChunkX] = slice;
+                widest = Math.max(widest, slice.maxWidth);
+                tallest = Math.max(tallest, slice.maxHeight);
+            }
+        }
+        maxWidth = widest;
+        maxHeight = tallest;
+        money = map.getMoney();
+        population = map.getPopulation();
+        happiness = map.getHappiness();
+        date = gameDate.getDateString();
+    }
+
+    /**
+     * Get how many chunks an instance can reach past the chunk of its top left tile
+     * <p>
+     * Instances are grouped by the chunk of their top left tile, so this many more chunks are
+     * copied before the view, for the sprites reaching into it from there.
+     *
+     * @param size The size of the largest instance in tiles
+     * @return The number of chunks to the right and downwards
+     */
+    static Point getReach(Point size) {
+        return new Point((size.x - 1 + Chunk.SIZE - 1) / Chunk.SIZE, (size.y - 1 + Chunk.SIZE - 1) / Chunk.SIZE);
+    }
+
+    /**
+     * Get the number of chunks in a row of the map
+     *
+     * @return The number of chunks
+     */
+    public int getChunksX() {
+        return chunksX;
+    }
+
+    /**
+     * Get the number of chunks in a column of the map
+     *
+     * @return The number of chunks
+     */
+    public int getChunksY() {
+        return chunksY;
+    }
+
+    /**
+     * Get the slice of a chunk
+     *
+     * @param chunkX The x position of the chunk
+     * @param chunkY The y position of the chunk
+     * @return The slice, null if the chunk wasn't copied
+     */
+    public Slice getSlice(int chunkX, int chunkY) {
+        if (chunkX < minChunkX || chunkX > maxChunkX || chunkY < minChunkY || chunkY > maxChunkY) {
+            return null;
+        }
+        return slices[(chunkY - minChunkY) * (maxChunkX - minChunkX + 1) + chunkX - minChunkX];
+    }
+
+    /**
+     * Get the width of the widest instance copied
+     *
+     * @return The width in tiles
+     */
+    public int getMaxWidth() {
+        return maxWidth;
+    }
+
+    /**
+     * Get the height of the tallest instance copied
+     *
+     * @return The height in tiles
+     */
+    public int getMaxHeight() {
+        return maxHeight;
+    }
+
+    /**
+     * Get the balance of the player
+     *
+     * @return The balance
+     */
+    public long getMoney() {
+        return money;
+    }
+
+    /**
+     * Get the population
+     *
+     * @return The population
+     */
+    public long getPopulation() {
+        return population;
+    }
+
+    /**
+     * Get the happiness of the population
+     *
+     * @return The happiness
+     */
+    public double getHappiness() {
+        return happiness;
+    }
+
+    /**
+     * Get the current date
+     *
+     * @return The date as a string
+     */
+    public String getDate() {
+        return date;
+    }
+
+    /**
+     * The instances whose top left tile is in a chunk, stored in flat arrays
+     */
+    public static class Slice {
+        /**
+         * The version of the chunk the slice was copied from
+         */
+        private final long version;
+        /**
+         * The number of instances
+         */
+        private final int count;
+        /**
+         * The x tile position of every instance
+         */
+        private final int[] xs;
+        /**
+         * The y tile position of every instance
+         */
+        private final int[] ys;
+        /**
+         * The width of every instance in tiles
+         */
+        private final int[] widths;
+        /**
+         * The height of every instance in tiles
+         */
+        private final int[] heights;
+        /**
+         * The bitmask of every road, -1 for the other instances
+         */
+        private final int[] bitMasks;
+        /**
+         * The sprite path of every instance
+         */
+        private final String[] sprites;
+        /**
+         * The width of the widest instance in tiles
+         */
+        private final int maxWidth;
+        /**
+         * The height of the tallest instance in tiles
+         */
+        private final int maxHeight;
+
+        /**
+         * Constructor
+         *
+         * @param placed  The instances whose top left tile is in the chunk
+         * @param version The version of the chunk
+         */
+        Slice(List<Placeable> placed, long version) {
+            this.version = version;
+            count = placed.size();
+            xs = new int[count];
+            ys = new int[count];
+            widths = new int[count];
+            heights = new int[count];
+            bitMasks = new int[count];
+            sprites = new String[count];
+            int widest = 0;
+            int tallest = 0;
+            for (int i = 0; i < count; i++) {
+                Placeable placeable = placed.get(i);
+                xs[i] = placeable.getActualPos().x;
+                ys[i] = placeable.getActualPos().y;
+                widths[i] = placeable.getSize().x;
+                heights[i] = placeable.getSize().y;
+                bitMasks[i] = placeable.isRoad() ? ((Road) placeable).getBitMask() : -1;
+                sprites[i] = placeable.getSpritePath();
+                widest = Math.max(widest, widths[i]);
+                tallest = Math.max(tallest, heights[i]);
+            }
+            maxWidth = widest;
+            maxHeight = tallest;
+        }
+
+        /**
+         * Get the version of the chunk the slice was copied from
+         *
+         * @return The version, changed whenever something drawn over the chunk changes
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * Get the number of instances
+         *
+         * @return The number of instances
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * Get the x tile position of an instance
+         *
+         * @param i The index of the instance
+         * @return The x position
+         */
+        public int getX(int i) {
+            return xs[i];
+        }
+
+        /**
+         * Get the y tile position of an instance
+         *
+         * @param i The index of the instance
+         * @return The y position
+         */
+        public int getY(int i) {
+            return ys[i];
+        }
+
+        /**
+         * Get the width of an instance
+         *
+         * @param i The index of the instance
+         * @return The width in tiles
+         */
+        public int getWidth(int i) {
+            return widths[i];
+        }
+
+        /**
+         * Get the height of an instance
+         *
+         * @param i The index of the instance
+         * @return The height in tiles
+         */
+        public int getHeight(int i) {
+            return heights[i];
+        }
+
+        /**
+         * Get the road bitmask of an instance
+         *
+         * @param i The index of the instance
+         * @return The bitmask, -1 if the instance isn't a road
+         */
+        public int getBitMask(int i) {
+            return bitMasks[i];
+        }
+
+        /**
+         * Get the sprite path of an instance
+         *
+         * @param i The index of the instance
+         * @return The path, relative to the user resources
+         */
+        public String getSprite(int i) {
+            return sprites[i];
+        }
+    }
+}
@@ -31,6 +31,7 @@ import java.net.URL;
 import java.util.List;
 import java.util.Objects;
 import java.util.ResourceBundle;
+import java.util.function.BooleanSupplier;
 
 /**
  * The game class
@@ -90,11 +91,15 @@ public class Game implements Initializable {
     /**
      * The list of possible placeables
      */
-    static List<Placeable> placeables;
+    private List<Placeable> placeables;
     /**
-     * The game map
+     * The renderer drawing the map
      */
-    Map map;
+    private final MapRenderer renderer = new MapRenderer();
+    /**
+     * The simulation running the game
+     */
+    Simulation simulation;
     /**
      * The game camera
      */
@@ -116,14 +121,49 @@ public class Game implements Initializable {
      */
     int selectedId = -1;
     /**
-     * The current game time
+     * Was the map being edited in the previous frame?
      */
-    GameDate gameDate = new GameDate();
+    boolean editing = false;
+    /**
+     * Hands over the edit the simulation was too far behind to take, null if there is none
+     */
+    BooleanSupplier pendingEdit;
     /**
      * The possible images for representing population happiness
      */
     Image[] happinessImages;
 
+    /**
+     * The snapshot drawn in the last frame, null if nothing was drawn yet
+     */
+    FrameSnapshot shownFrame;
+    /**
+     * The x position of the camera in the last frame
+     */
+    float shownCameraX;
+    /**
+     * The y position of the camera in the last frame
+     */
+    float shownCameraY;
+    /**
+     * The width of the canvas in the last frame
+     */
+    double shownWidth;
+    /**
+     * The height of the canvas in the last frame
+     */
+    double shownHeight;
+
+    /**
+     * The tiles in view last handed to the simulation, null until they are
+     */
+    java.awt.Rectangle sentView;
+
+    /**
+     * The directory of the last save the player chose
+     */
+    File saveDirectory = new File(".");
+
     /**
      * The animation of the build panel
      */
@@ -146,15 +186,14 @@ public class Game implements Initializable {
         canvas.widthProperty().bind(pane.widthProperty());
         canvas.heightProperty().bind(pane.heightProperty());
 
-        placeables = Placeable.loadPlaceables(Objects.requireNonNull(getClass().getClassLoader().getResource("userResources/placeables.xml")).getPath());
-        if (placeables == null) {
-            throw new RuntimeException("Couldn't load placeables!");
-        }
+        Catalog.load(Objects.requireNonNull(getClass().getClassLoader().getResource("userResources/placeables.xml")).getPath());
+        placeables = Catalog.getPlaceables();
+        renderer.loadSprites(placeables);
 
         for (int i = 0; i < placeables.size(); i++) {
             Placeable placeable = placeables.get(i);
             Button button = new Button();
-            button.setGraphic(placeable.getButtonGraphic());
+            button.setGraphic(renderer.getButtonGraphic(placeable));
             button.setMaxSize(16, 16);
             button.setPadding(new Insets(0));
             int finalI = i;
@@ -166,7 +205,8 @@ public class Game implements Initializable {
             }
         }
 
-        map = new Map(100, 100);
+        Map map = new Map(100, 100);
+        simulation = new Simulation(map);
         camera = new Camera(map, canvasHolder);
 
         gameLoopTimer = new AnimationTimer() {
@@ -198,23 +238,6 @@ public class Game implements Initializable {
                 new Image(String.valueOf(getClass().getResource("fxml/images/happy.png"))),
                 new Image(String.valueOf(getClass().getResource("fxml/images/veryhappy.png"))),
         };
-
-        gameDate.registerEvent(() -> map.collectTaxes());
-    }
-
-    /**
-     * Get a placeable with a given name
-     *
-     * @param name The name of the placeable
-     * @return The found placeable or null
-     */
-    public static Placeable getPlaceable(String name) {
-        for (Placeable placeable : placeables) {
-            if (placeable.name.equals(name)) {
-                return placeable;
-            }
-        }
-        return null;
     }
 
     /**
@@ -222,6 +245,7 @@ public class Game implements Initializable {
      */
     public void start() {
         input = new Input(root.getScene(), canvas);
+        simulation.start();
         gameLoopTimer.start();
     }
 
@@ -246,73 +270,146 @@ public class Game implements Initializable {
             x += elapsedTime * cameraSpeed;
         }
         camera.move(new Vec2(x, y));
+        sendView();
 
+        if (pendingEdit != null && pendingEdit.getAsBoolean()) {
+            pendingEdit = null;
+        }
+        Input.ButtonState primary = input.getButton(MouseButton.PRIMARY);
+        Input.ButtonState secondary = input.getButton(MouseButton.SECONDARY);
+        long buttonTime = Math.max(primary.time, secondary.time);
         if (selectedId != -1) {
             Point windowSpace = input.getMousePos();
             Point cameraSpace = camera.windowToCameraSpace(windowSpace);
             Point worldSpace = camera.cameraToWorldSpace(cameraSpace);
-            TilePos tileSpace = map.worldToTileSpace(worldSpace);
-            if (input.getButton(MouseButton.PRIMARY).held) {
-                if (map.canPlace(placeables.get(selectedId), tileSpace)) {
-                    map.place(placeables.get(selectedId), tileSpace);
-                }
+            TilePos tileSpace = new TilePos(worldSpace.x / 16, worldSpace.y / 16);
+            boolean placing = primary.held;
+            boolean removing = secondary.held;
+            long time = Math.max(buttonTime, input.getMouseTime());
+            int id = selectedId;
+            if (placing) {
+                submitEdit(() -> simulation.submitPlace(time, id, tileSpace));
             }
-            if (input.getButton(MouseButton.SECONDARY).held) {
-                map.remove(tileSpace);
+            if (removing) {
+                submitEdit(() -> simulation.submitRemove(time, tileSpace));
             }
+            setEditing(placing || removing, buttonTime);
             if (input.getButton(MouseButton.MIDDLE).held) {
                 camera.move(new Vec2(-input.getMouseDelta().x, -input.getMouseDelta().y));
             }
         } else {
+            setEditing(false, buttonTime);
             if (input.getButton(MouseButton.PRIMARY).held || input.getButton(MouseButton.MIDDLE).held) {
                 camera.move(new Vec2(-input.getMouseDelta().x, -input.getMouseDelta().y));
             }
         }
 
-        gameDate.advance(elapsedTime);
-
         if (input.getKey(KeyCode.A).pressed) {
             System.out.println("Hello");
-            ObjectOutputStream outputStream;
-            try {
-                outputStream = new ObjectOutputStream(new FileOutputStream("test.dat"));
-                outputStream.writeObject(map);
-                outputStream.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            simulation.submit(state -> state.save("test.dat"));
         }
 
         if (input.getKey(KeyCode.B).pressed) {
             System.out.println("Load");
-            try {
-                ObjectInputStream inputStream = new ObjectInputStream(new FileInputStream("test.dat"));
-                map = (Map) inputStream.readObject();
-                inputStream.close();
-            } catch (IOException | ClassNotFoundException e) {
-                e.printStackTrace();
-            }
+            simulation.submit(state -> state.load("test.dat"));
         }
 
         input.reset();
     }
 
     /**
-     * The render function
+     * Tell the simulation which tiles are in view, so it only copies those into the snapshots
+     * <p>
+     * Only sent when the view changed, and tried again next frame if the simulation is too far behind.
+     */
+    private void sendView() {
+        int minX = Math.floorDiv((int) camera.getX(), 16);
+        int minY = Math.floorDiv((int) camera.getY(), 16);
+        java.awt.Rectangle view = new java.awt.Rectangle(minX, minY,
+                (int) Math.ceil(canvas.getWidth() / 16) + 1, (int) Math.ceil(canvas.getHeight() / 16) + 1);
+        if (!view.equals(sentView) && simulation.submitView(view)) {
+            sentView = view;
+        }
+    }
+
+    /**
+     * Hand over an edit of the player, keeping it to be tried again next frame if the simulation is too far behind
+     * <p>
+     * While an edit is kept, new edits are ignored, as the simulation can't keep up with them anyway.
+     *
+     * @param edit Hands over the edit, returning if it was taken
+     */
+    private void submitEdit(BooleanSupplier edit) {
+        if (pendingEdit == null && !edit.getAsBoolean()) {
+            pendingEdit = edit;
+        }
+    }
+
+    /**
+     * Commit the edits of the player to the map once they let go of the mouse
+     * <p>
+     * If the simulation is too far behind to take the commit, or an edit is still kept to be
+     * tried again, it is tried again next frame.
      *
+     * @param editing Is the map being edited in this frame?
+     * @param time    The time the mouse buttons were last pressed or released, in {@link System#nanoTime()}
+     */
+    private void setEditing(boolean editing, long time) {
+        if (this.editing && !editing && (pendingEdit != null || !simulation.submitCommit(time))) {
+            return;
+        }
+        this.editing = editing;
+    }
+
+    /**
+     * The render function
+     * <p>
+     * Nothing is redrawn if the snapshot, the camera and the canvas are the same as in the last
+     * frame, and only the labels whose value changed are updated.
      */
     private void render() {
+        FrameSnapshot frame = simulation.getSnapshot();
+        if (frame == shownFrame && camera.getX() == shownCameraX && camera.getY() == shownCameraY
+                && canvas.getWidth() == shownWidth && canvas.getHeight() == shownHeight) {
+            return;
+        }
+
         ctx.setFill(Color.rgb(5, 77, 0));
         ctx.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
-        map.drawSelf(ctx, camera);
-        dateLabel.setText(gameDate.getDateString());
-        int happinessId = (int) (map.getHappiness() * 6);
+        renderer.draw(ctx, camera, frame);
+
+        if (shownFrame == null || !frame.getDate().equals(shownFrame.getDate())) {
+            dateLabel.setText(frame.getDate());
+        }
+        if (shownFrame == null || getHappinessId(frame) != getHappinessId(shownFrame)) {
+            happinessImage.setImage(happinessImages[getHappinessId(frame)]);
+        }
+        if (shownFrame == null || frame.getPopulation() != shownFrame.getPopulation()) {
+            populationLabel.setText(String.valueOf(frame.getPopulation()));
+        }
+        if (shownFrame == null || frame.getMoney() != shownFrame.getMoney()) {
+            moneyLabel.setText(String.valueOf(frame.getMoney()));
+        }
+
+        shownFrame = frame;
+        shownCameraX = camera.getX();
+        shownCameraY = camera.getY();
+        shownWidth = canvas.getWidth();
+        shownHeight = canvas.getHeight();
+    }
+
+    /**
+     * Get the image representing the happiness in a snapshot
+     *
+     * @param frame The snapshot
+     * @return The index of the happiness image
+     */
+    private int getHappinessId(FrameSnapshot frame) {
+        int happinessId = (int) (frame.getHappiness() * 6);
         if (happinessId == 5) {
             happinessId = 4;
         }
-        happinessImage.setImage(happinessImages[happinessId]);
-        populationLabel.setText(String.valueOf(map.getPopulation()));
-        moneyLabel.setText(String.valueOf(map.getMoney()));
+        return happinessId;
     }
 
     /**
@@ -340,13 +437,7 @@ public class Game implements Initializable {
      * @param path The path to save the game at
      */
     public void saveGame(String path) {
-        try {
-            ObjectOutputStream outputStream = new ObjectOutputStream(new FileOutputStream(path));
-            outputStream.writeObject(map);
-            outputStream.writeObject(gameDate);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        simulation.submit(state -> state.save(path));
     }
 
     /**
@@ -355,14 +446,7 @@ public class Game implements Initializable {
      * @param path The path to load the game from
      */
     public void loadGame(String path) {
-        try {
-            ObjectInputStream inputStream = new ObjectInputStream(new FileInputStream(path));
-            map = (Map) inputStream.readObject();
-            gameDate = (GameDate) inputStream.readObject();
-            gameDate.registerEvent(() -> map.collectTaxes());
-        } catch (IOException | ClassNotFoundException e) {
-            e.printStackTrace();
-        }
+        simulation.submit(state -> state.load(path));
     }
 
     /**
@@ -370,13 +454,9 @@ public class Game implements Initializable {
      */
     @FXML
     private void loadButton() {
-        FileChooser fileChooser = new FileChooser();
-        fileChooser.setTitle("Load Game");
-        fileChooser.getExtensionFilters().add(
-                new FileChooser.ExtensionFilter("Save File", "*.cbs")
-        );
-        File file = fileChooser.showOpenDialog(root.getScene().getWindow());
+        File file = new SaveBrowser(saveDirectory).showAndWait(root.getScene().getWindow());
         if (file != null) {
+            saveDirectory = file.getAbsoluteFile().getParentFile();
             loadGame(file.getPath());
         }
     }
@@ -391,10 +471,12 @@ public class Game implements Initializable {
         fileChooser.getExtensionFilters().add(
                 new FileChooser.ExtensionFilter("Save File", "*.cbs")
         );
+        fileChooser.setInitialDirectory(saveDirectory);
         File file = fileChooser.showSaveDialog(root.getScene().getWindow());
         if (file == null) {
             return;
         }
+        saveDirectory = file.getAbsoluteFile().getParentFile();
         String path = file.getPath();
         if (!path.endsWith(".cbs")) {
             path = path + ".cbs";
@@ -407,9 +489,7 @@ public class Game implements Initializable {
      */
     @FXML
     private void reset() {
-        map.reset();
-        gameDate = new GameDate();
-        gameDate.registerEvent(() -> map.collectTaxes());
+        simulation.submit(Simulation::reset);
     }
 
     /**
@@ -417,6 +497,8 @@ public class Game implements Initializable {
      */
     @FXML
     private void quit() {
+        gameLoopTimer.stop();
+        simulation.stop();
         ((Stage) root.getScene().getWindow()).close();
     }
 
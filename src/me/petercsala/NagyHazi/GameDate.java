@@ -1,16 +1,12 @@
 package me.petercsala.NagyHazi;
 
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Represents the time in the game
  */
-public class GameDate implements Serializable {
+public class GameDate {
     /**
      * The year the game is in
      */
@@ -43,6 +39,19 @@ public class GameDate implements Serializable {
         day = 27;
     }
 
+    /**
+     * Constructor
+     *
+     * @param year  The year
+     * @param month The month
+     * @param day   The day
+     */
+    public GameDate(int year, int month, int day) {
+        this.year = year;
+        this.month = month;
+        this.day = day;
+    }
+
     /**
      * Advance the time
      *
@@ -77,47 +86,48 @@ public class GameDate implements Serializable {
     }
 
     /**
-     * Register a day change event
+     * Get the year
      *
-     * @param function The function to run
+     * @return The year
      */
-    public void registerEvent(NewDayFunction function) {
-        onDayChange.add(function);
+    public int getYear() {
+        return year;
     }
 
     /**
-     * The interface representing a day change function
+     * Get the month
+     *
+     * @return The month
      */
-    public interface NewDayFunction {
-        /**
-         * Run the function
-         */
-        void run();
+    public int getMonth() {
+        return month;
     }
 
     /**
-     * Read in object from a stream
+     * Get the day
      *
-     * @param inputStream The stream to read from
-     * @throws ClassNotFoundException Thrown, when the underlying interface throws a ClassNotFoundException
-     * @throws IOException            Thrown, when the underlying interface throws an IOException
+     * @return The day
      */
-    private void readObject(ObjectInputStream inputStream) throws ClassNotFoundException, IOException {
-        year = inputStream.readInt();
-        month = inputStream.readInt();
-        day = inputStream.readInt();
-        onDayChange = new ArrayList<>();
+    public int getDay() {
+        return day;
     }
 
     /**
-     * Write the object to a stream
+     * Register a day change event
      *
-     * @param outputStream The stream to write to
-     * @throws IOException Thrown, when the underlying interface throws an IOException
+     * @param function The function to run
      */
-    private void writeObject(ObjectOutputStream outputStream) throws IOException {
-        outputStream.writeInt(year);
-        outputStream.writeInt(month);
-        outputStream.writeInt(day);
+    public void registerEvent(NewDayFunction function) {
+        onDayChange.add(function);
+    }
+
+    /**
+     * The interface representing a day change function
+     */
+    public interface NewDayFunction {
+        /**
+         * Run the function
+         */
+        void run();
     }
 }
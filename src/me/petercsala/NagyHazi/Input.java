@@ -8,21 +8,23 @@ import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
 
 import java.awt.*;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * A class holding the keyboard and mouse state
+ * <p>
+ * The state is only touched by the event handlers and the game loop, both on the FX thread.
+ * The edits it leads to reach the simulation through {@link Simulation#submitPlace(int, TilePos)}
+ * and the others.
  */
 public class Input {
     /**
-     * The mouse button states
+     * The mouse button states, by the ordinal of the button
      */
-    HashMap<MouseButton, ButtonState> buttons = new HashMap<>();
+    private final ButtonState[] buttons = new ButtonState[MouseButton.values().length];
     /**
-     * The keyboard state
+     * The keyboard state, by the ordinal of the key code
      */
-    HashMap<KeyCode, KeyState> keys = new HashMap<>();
+    private final KeyState[] keys = new KeyState[KeyCode.values().length];
     /**
      * The position of the mouse
      */
@@ -31,6 +33,10 @@ public class Input {
      * The mouse position in the previous frame
      */
     private Point prevMousePos = new Point();
+    /**
+     * The time the mouse last moved, in {@link System#nanoTime()}
+     */
+    private long mouseTime;
 
     /**
      * Constructor
@@ -39,57 +45,58 @@ public class Input {
      * @param boundNode  The node the input is bound to
      */
     public Input(Scene boundScene, Node boundNode) {
+        for (int i = 0; i < buttons.length; i++) {
+            buttons[i] = new ButtonState();
+        }
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new KeyState();
+        }
+
         boundScene.addEventHandler(KeyEvent.KEY_PRESSED, keyEvent -> {
-            if (!keys.containsKey(keyEvent.getCode())) {
-                keys.put(keyEvent.getCode(), new KeyState());
-            }
-            KeyState state = keys.get(keyEvent.getCode());
+            KeyState state = keys[keyEvent.getCode().ordinal()];
             if (!state.held) {
                 state.pressed = true;
                 state.held = true;
+                state.time = System.nanoTime();
             }
-            keys.put(keyEvent.getCode(), state);
         });
         boundScene.addEventHandler(KeyEvent.KEY_RELEASED, keyEvent -> {
-            if (!keys.containsKey(keyEvent.getCode())) {
-                keys.put(keyEvent.getCode(), new KeyState());
-            }
-            KeyState state = keys.get(keyEvent.getCode());
+            KeyState state = keys[keyEvent.getCode().ordinal()];
             if (state.held) {
                 state.released = true;
                 state.held = false;
+                state.time = System.nanoTime();
             }
-            keys.put(keyEvent.getCode(), state);
         });
         boundScene.addEventHandler(MouseEvent.MOUSE_PRESSED, mouseEvent -> {
             if (!mouseEvent.getPickResult().getIntersectedNode().equals(boundNode)) {
                 return;
             }
-            if (!buttons.containsKey(mouseEvent.getButton())) {
-                buttons.put(mouseEvent.getButton(), new ButtonState());
-            }
-            ButtonState state = buttons.get(mouseEvent.getButton());
+            ButtonState state = buttons[mouseEvent.getButton().ordinal()];
             if (!state.held) {
                 state.pressed = true;
                 state.held = true;
+                state.time = System.nanoTime();
             }
             state.clickCount = mouseEvent.getClickCount();
-            buttons.put(mouseEvent.getButton(), state);
         });
         boundScene.addEventHandler(MouseEvent.MOUSE_RELEASED, mouseEvent -> {
-            if (!buttons.containsKey(mouseEvent.getButton())) {
-                buttons.put(mouseEvent.getButton(), new ButtonState());
-            }
-            ButtonState state = buttons.get(mouseEvent.getButton());
+            ButtonState state = buttons[mouseEvent.getButton().ordinal()];
             if (state.held) {
                 state.released = true;
                 state.held = false;
+                state.time = System.nanoTime();
             }
             state.clickCount = mouseEvent.getClickCount();
-            buttons.put(mouseEvent.getButton(), state);
         });
-        boundScene.addEventHandler(MouseEvent.MOUSE_MOVED, mouseEvent -> mousePos.setLocation(mouseEvent.getSceneX(), mouseEvent.getSceneY()));
-        boundNode.addEventHandler(MouseEvent.MOUSE_DRAGGED, mouseEvent -> mousePos.setLocation(mouseEvent.getSceneX(), mouseEvent.getSceneY()));
+        boundScene.addEventHandler(MouseEvent.MOUSE_MOVED, mouseEvent -> {
+            mousePos.setLocation(mouseEvent.getSceneX(), mouseEvent.getSceneY());
+            mouseTime = System.nanoTime();
+        });
+        boundNode.addEventHandler(MouseEvent.MOUSE_DRAGGED, mouseEvent -> {
+            mousePos.setLocation(mouseEvent.getSceneX(), mouseEvent.getSceneY());
+            mouseTime = System.nanoTime();
+        });
     }
 
     /**
@@ -99,10 +106,7 @@ public class Input {
      * @return The state of the key
      */
     public KeyState getKey(KeyCode keyCode) {
-        if (!keys.containsKey(keyCode)) {
-            keys.put(keyCode, new KeyState());
-        }
-        return keys.get(keyCode);
+        return keys[keyCode.ordinal()];
     }
 
     /**
@@ -112,10 +116,7 @@ public class Input {
      * @return The state of the button
      */
     public ButtonState getButton(MouseButton button) {
-        if (!buttons.containsKey(button)) {
-            buttons.put(button, new ButtonState());
-        }
-        return buttons.get(button);
+        return buttons[button.ordinal()];
     }
 
     /**
@@ -127,6 +128,15 @@ public class Input {
         return mousePos;
     }
 
+    /**
+     * Get the time the mouse last moved
+     *
+     * @return The time, in {@link System#nanoTime()}
+     */
+    public long getMouseTime() {
+        return mouseTime;
+    }
+
     /**
      * Get the mouse movement since the last frame
      *
@@ -140,17 +150,13 @@ public class Input {
      * Reset the state of the input after a frame
      */
     public void reset() {
-        for (Map.Entry<KeyCode, KeyState> entry : keys.entrySet()) {
-            KeyState state = entry.getValue();
+        for (KeyState state : keys) {
             state.pressed = false;
             state.released = false;
-            entry.setValue(state);
         }
-        for (Map.Entry<MouseButton, ButtonState> entry : buttons.entrySet()) {
-            ButtonState state = entry.getValue();
+        for (ButtonState state : buttons) {
             state.pressed = false;
             state.released = false;
-            entry.setValue(state);
         }
         prevMousePos = (Point) mousePos.clone();
     }
@@ -175,6 +181,10 @@ public class Input {
          * The number of clicks
          */
         public int clickCount;
+        /**
+         * The time the button was last pressed or released, in {@link System#nanoTime()}
+         */
+        public long time;
     }
 
     /**
@@ -193,5 +203,9 @@ public class Input {
          * Was the key just released
          */
         public boolean released;
+        /**
+         * The time the key was last pressed or released, in {@link System#nanoTime()}
+         */
+        public long time;
     }
 }
@@ -0,0 +1,135 @@
+package me.petercsala.NagyHazi;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded queue of timestamped commands made from the input, handing them from one thread to another
+ * <p>
+ * Only one thread may offer commands and only one may drain them. The commands are stored in
+ * primitive arrays, so neither side locks or allocates.
+ */
+public class InputEventRing {
+    /**
+     * Place a placeable, the code is its index in the {@link Catalog}, x and y are the tile to place it on
+     */
+    static final int PLACE = 0;
+    /**
+     * Remove the placeable on the tile at x and y
+     */
+    static final int REMOVE = 1;
+    /**
+     * The player let go of the mouse, the edits so far are committed
+     */
+    static final int COMMIT = 2;
+    /**
+     * The view of the player moved, x and y are its top left tile, the code is its width in tiles
+     * shifted left by 16, with its height in tiles in the low 16 bits
+     */
+    static final int VIEW = 3;
+
+    /**
+     * The mask turning a sequence number into a slot index
+     */
+    private final int mask;
+    /**
+     * The time of every command
+     */
+    private final long[] times;
+    /**
+     * The type of every command
+     */
+    private final int[] types;
+    /**
+     * The code of every command
+     */
+    private final int[] codes;
+    /**
+     * The x value of every command
+     */
+    private final int[] xs;
+    /**
+     * The y value of every command
+     */
+    private final int[] ys;
+    /**
+     * The sequence number of the next command to drain, only written by the consumer
+     */
+    private final AtomicLong head = new AtomicLong();
+    /**
+     * The sequence number of the next command to offer, only written by the producer
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param capacity The number of commands held at most, rounded up to a power of two
+     */
+    public InputEventRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        mask = size - 1;
+        times = new long[size];
+        types = new int[size];
+        codes = new int[size];
+        xs = new int[size];
+        ys = new int[size];
+    }
+
+    /**
+     * Add a command, from the producer thread
+     *
+     * @param time The time of the command, in {@link System#nanoTime()}
+     * @param type The type of the command
+     * @param code The code of the command
+     * @param x    The x value of the command
+     * @param y    The y value of the command
+     * @return If the command was added, false if the queue is full
+     */
+    public boolean offer(long time, int type, int code, int x, int y) {
+        long sequence = tail.get();
+        if (sequence - head.get() > mask) {
+            return false;
+        }
+        int index = (int) sequence & mask;
+        times[index] = time;
+        types[index] = type;
+        codes[index] = code;
+        xs[index] = x;
+        ys[index] = y;
+        tail.lazySet(sequence + 1);
+        return true;
+    }
+
+    /**
+     * Hand every waiting command to a handler, in the order they were offered, from the consumer thread
+     *
+     * @param handler The handler
+     * @return The number of commands handled
+     */
+    public int drain(Handler handler) {
+        long sequence = head.get();
+        long end = tail.get();
+        for (long i = sequence; i < end; i++) {
+            int index = (int) i & mask;
+            handler.handle(times[index], types[index], codes[index], xs[index], ys[index]);
+        }
+        head.lazySet(end);
+        return (int) (end - sequence);
+    }
+
+    /**
+     * Receives the drained commands
+     */
+    public interface Handler {
+        /**
+         * Handle a command
+         *
+         * @param time The time of the command, in {@link System#nanoTime()}
+         * @param type The type of the command
+         * @param code The code of the command
+         * @param x    The x value of the command
+         * @param y    The y value of the command
+         */
+        void handle(long time, int type, int code, int x, int y);
+    }
+}
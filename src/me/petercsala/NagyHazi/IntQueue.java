@@ -0,0 +1,78 @@
+package me.petercsala.NagyHazi;
+
+/**
+ * A first in, first out queue of ints on a reusable ring buffer
+ */
+public class IntQueue {
+    /**
+     * The ring buffer, its length is always a power of two
+     */
+    private int[] buffer;
+    /**
+     * The index of the first element
+     */
+    private int head = 0;
+    /**
+     * The number of elements in the queue
+     */
+    private int size = 0;
+
+    /**
+     * Constructor
+     *
+     * @param capacity The initial capacity, rounded up to a power of two
+     */
+    public IntQueue(int capacity) {
+        buffer = new int[Integer.highestOneBit(Math.max(2, capacity - 1)) << 1];
+    }
+
+    /**
+     * Add an element to the end of the queue, growing the buffer if it is full
+     *
+     * @param value The element
+     */
+    public void add(int value) {
+        if (size == buffer.length) {
+            int[] grown = new int[buffer.length * 2];
+            for (int i = 0; i < size; i++) {
+                grown[i] = buffer[(head + i) & (buffer.length - 1)];
+            }
+            buffer = grown;
+            head = 0;
+        }
+        buffer[(head + size) & (buffer.length - 1)] = value;
+        size++;
+    }
+
+    /**
+     * Remove the first element of the queue
+     *
+     * @return The element
+     */
+    public int remove() {
+        if (size == 0) {
+            throw new IllegalStateException("The queue is empty!");
+        }
+        int value = buffer[head];
+        head = (head + 1) & (buffer.length - 1);
+        size--;
+        return value;
+    }
+
+    /**
+     * Is the queue empty?
+     *
+     * @return If the queue is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Remove every element from the queue, keeping the buffer
+     */
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+}
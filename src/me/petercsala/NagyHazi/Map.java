@@ -1,34 +1,86 @@
 package me.petercsala.NagyHazi;
 
-import javafx.scene.canvas.GraphicsContext;
-
 import java.awt.*;
-import java.io.Serializable;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Represents the game map
+ * <p>
+ * A map made from a save decodes its chunks only when a cell in them is first looked at. An edit
+ * only decodes what it reaches: the cells around it, the decor sources that can reach it, and the
+ * road networks it touches, which are built again when they are first needed. Listing every
+ * placeable or recomputing the whole map decodes the rest.
  */
-public class Map implements Serializable {
+public class Map {
     /**
      * The size of the map
      */
     private final Point mapSize;
 
     /**
-     * The tiles inside the map
+     * The number of chunks in a row
+     */
+    private final int chunksX;
+    /**
+     * The chunks of the map, row by row, null until something is placed in them
+     */
+    private final Chunk[] chunks;
+
+    /**
+     * The source of the chunk versions, shared by every map so a version is never reused
+     */
+    private static final AtomicLong versionCounter = new AtomicLong();
+    /**
+     * The version of every chunk, changed whenever something drawn over the chunk might have changed
+     */
+    private final long[] chunkVersions;
+
+    /**
+     * The resource distribution of the map
+     */
+    private final ResourceFlow resourceFlow = new ResourceFlow(this);
+
+    /**
+     * The placed placeables by their position
+     */
+    private final SpatialIndex spatialIndex;
+
+    /**
+     * The decor of every point of the map
+     */
+    private final DecorField decorField;
+
+    /**
+     * The edits since the map was last saved in full
+     */
+    private final EditJournal journal = new EditJournal();
+
+    /**
+     * Every placed placeable, in no particular order
      */
-    private final Tile[][] map;
+    private final List<Placeable> placed = new ArrayList<>();
+
+    /**
+     * The save the chunks not decoded yet are read from, null once the whole map is decoded
+     */
+    private SaveFile save;
 
     /**
      * The current population
      */
     private long population = 0;
     /**
-     * The current happiness
+     * The sum of the happiness of every placeable
+     */
+    private double happinessTotal = 0;
+    /**
+     * The sum of the happiness multipliers of every placeable
      */
-    private double happiness = 0;
+    private double happinessWeight = 0;
     /**
      * The current balance
      */
@@ -42,13 +94,14 @@ public class Map implements Serializable {
      */
     public Map(int width, int height) {
         mapSize = new Point(width, height);
-
-        map = new Tile[width][height];
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                map[x][y] = new Tile();
-            }
-        }
+        spatialIndex = new SpatialIndex(mapSize);
+        decorField = new DecorField(mapSize);
+
+        chunksX = (width + Chunk.SIZE - 1) / Chunk.SIZE;
+        int chunksY = (height + Chunk.SIZE - 1) / Chunk.SIZE;
+        chunks = new Chunk[chunksX * chunksY];
+        chunkVersions = new long[chunks.length];
+        Arrays.fill(chunkVersions, versionCounter.incrementAndGet());
     }
 
     /**
@@ -68,16 +121,24 @@ public class Map implements Serializable {
      * @return If the placeable can be placed
      */
     public boolean canPlace(Placeable placeable, TilePos pos) {
+        return placeable.cost <= money && isFree(placeable, pos);
+    }
+
+    /**
+     * Is the area a placeable would cover on the given point inside the map and empty?
+     *
+     * @param placeable The placeable to check
+     * @param pos       The point to check
+     * @return If the area is free
+     */
+    boolean isFree(Placeable placeable, TilePos pos) {
         if (pos.x < 0 || pos.x + placeable.getSize().x >= mapSize.x
                 || pos.y < 0 || pos.y + placeable.getSize().y >= mapSize.y) {
             return false;
         }
-        if (placeable.cost > money) {
-            return false;
-        }
         for (int dx = 0; dx < placeable.getSize().x; dx++) {
             for (int dy = 0; dy < placeable.getSize().y; dy++) {
-                if (!map[pos.x + dx][pos.y + dy].isBuildable()) {
+                if (getInstanceId(pos.x + dx, pos.y + dy) != 0) {
                     return false;
                 }
             }
@@ -93,30 +154,31 @@ public class Map implements Serializable {
      */
     public void place(Placeable placeable, TilePos pos) {
         Placeable copy = placeable.clone(pos);
+        decodeDecorArea(copy);
+        resourceFlow.editing(copy);
 
-        for (int dx = 0; dx < copy.getSize().x; dx++) {
-            for (int dy = 0; dy < copy.getSize().y; dy++) {
-                map[pos.x + dx][pos.y + dy].place(copy);
-            }
-        }
+        register(copy);
+        setFootprint(copy, copy.placedIndex + 1);
+        touchChunks(copy);
+        journal.placed(copy);
+        addHappiness(copy);
+        happinessWeight += copy.getHappinessMultiplier();
 
         updateWithNeighbours(pos);
-        updateResourceFlow();
-
-        for (int x = 0; x < mapSize.x; x++) {
-            for (int y = 0; y < mapSize.y; y++) {
-                Placeable other = map[x][y].getPlaceable();
-                if (other != null && other.actualPos.equals(new TilePos(x, y))) {
-                    long deltaDecor = copy.getProvidedDecorAt(other.getCenter());
-                    other.addDecor(deltaDecor);
-                    if (!copy.actualPos.equals(new TilePos(x, y))) {
-                        copy.addDecor(other.getProvidedDecorAt(copy.getCenter()));
-                    }
-                }
+        resourceFlow.placed(copy);
+
+        spatialIndex.add(copy);
+        decorField.add(copy);
+        for (Placeable other : spatialIndex.query(copy.getCenter(), copy.getDecorRadius())) {
+            if (other != copy) {
+                removeHappiness(other);
+                other.addDecor(decorField.getProvided(copy, other.getCenter()));
+                addHappiness(other);
             }
         }
-
-        recalculateHappiness();
+        removeHappiness(copy);
+        copy.addDecor(decorField.get(copy.getCenter()));
+        addHappiness(copy);
 
         population += copy.getResidents();
 
@@ -133,56 +195,118 @@ public class Map implements Serializable {
                 || pos.y < 0 || pos.y >= mapSize.y) {
             return;
         }
-        Placeable placeable = map[pos.x][pos.y].getPlaceable();
+        Placeable placeable = getInstance(getInstanceId(pos.x, pos.y));
         if (placeable == null) {
             return;
         }
+        decodeDecorArea(placeable);
+        resourceFlow.editing(placeable);
         pos = placeable.getActualPos();
-        for (int dx = 0; dx < placeable.getSize().x; dx++) {
-            for (int dy = 0; dy < placeable.getSize().y; dy++) {
-                map[pos.x + dx][pos.y + dy].place(null);
-            }
-        }
+        setFootprint(placeable, 0);
+        touchChunks(placeable);
+        journal.removed(placeable);
+        unregister(placeable);
+        removeHappiness(placeable);
+        happinessWeight -= placeable.getHappinessMultiplier();
 
         updateWithNeighbours(pos);
-        updateResourceFlow();
-
-        for (int x = 0; x < mapSize.x; x++) {
-            for (int y = 0; y < mapSize.y; y++) {
-                Placeable other = map[x][y].getPlaceable();
-                if (other != null && other.actualPos.equals(new TilePos(x, y))) {
-                    long deltaDecor = placeable.getProvidedDecorAt(other.getCenter());
-                    other.addDecor(-deltaDecor);
-                }
-            }
+        resourceFlow.removed(placeable);
+
+        spatialIndex.remove(placeable);
+        decorField.remove(placeable);
+        for (Placeable other : spatialIndex.query(placeable.getCenter(), placeable.getDecorRadius())) {
+            removeHappiness(other);
+            other.addDecor(-decorField.getProvided(placeable, other.getCenter()));
+            addHappiness(other);
         }
 
-        recalculateHappiness();
-
         population -= placeable.getResidents();
     }
 
     /**
-     * Recalculate the happiness of the area
+     * Recalculate the happiness sums from scratch
      */
     private void recalculateHappiness() {
-        happiness = 0;
-        double happinessSum = 0;
-        for (int x = 0; x < mapSize.x; x++) {
-            for (int y = 0; y < mapSize.y; y++) {
-                Placeable placeable = getTile(new TilePos(x, y)).getPlaceable();
-                if (placeable == null || !placeable.getActualPos().equals(new TilePos(x, y))) {
-                    continue;
-                }
-                happiness += placeable.getHappiness();
-                happinessSum += placeable.getHappinessMultiplier();
-            }
+        happinessTotal = 0;
+        happinessWeight = 0;
+        for (Placeable placeable : placed) {
+            happinessTotal += placeable.getHappiness();
+            happinessWeight += placeable.getHappinessMultiplier();
         }
-        if (happinessSum != 0) {
-            happiness /= happinessSum;
-        } else {
-            happiness = 0;
+    }
+
+    /**
+     * Add a placeable to the list of placed placeables
+     *
+     * @param placeable The placeable
+     */
+    private void register(Placeable placeable) {
+        placeable.placedIndex = placed.size();
+        placed.add(placeable);
+    }
+
+    /**
+     * Remove a placeable from the list of placed placeables, by moving the last one into its place
+     *
+     * @param placeable The placeable
+     */
+    private void unregister(Placeable placeable) {
+        Placeable last = placed.remove(placed.size() - 1);
+        if (last != placeable) {
+            last.placedIndex = placeable.placedIndex;
+            placed.set(last.placedIndex, last);
+            setFootprint(last, last.placedIndex + 1);
         }
+        placeable.placedIndex = -1;
+    }
+
+    /**
+     * Get every placed placeable
+     *
+     * @return The placeables, in no particular order
+     */
+    public List<Placeable> getPlaced() {
+        decodeAll();
+        return Collections.unmodifiableList(placed);
+    }
+
+    /**
+     * Get the placeables decoded so far, without decoding the rest of the save the map is made from
+     *
+     * @return The placeables, in no particular order
+     */
+    List<Placeable> getDecodedPlaced() {
+        return Collections.unmodifiableList(placed);
+    }
+
+    /**
+     * Get the number of placed placeables, without decoding the save the map is made from
+     *
+     * @return The number of placeables
+     */
+    public int getInstanceCount() {
+        return placed.size() + (save == null ? 0 : save.getUndecodedCount());
+    }
+
+    /**
+     * Add the happiness of a placeable to the sum
+     * <p>
+     * Has to be called after every change to the inputs of the placeable, paired with a
+     * call to {@link #removeHappiness(Placeable)} before the change.
+     *
+     * @param placeable The placeable
+     */
+    void addHappiness(Placeable placeable) {
+        happinessTotal += placeable.getHappiness();
+    }
+
+    /**
+     * Remove the happiness of a placeable from the sum
+     *
+     * @param placeable The placeable
+     */
+    void removeHappiness(Placeable placeable) {
+        happinessTotal -= placeable.getHappiness();
     }
 
     /**
@@ -217,97 +341,275 @@ public class Map implements Serializable {
                 || pos.y < 0 || pos.y >= mapSize.y) {
             return null;
         }
-        return map[pos.x][pos.y];
+        return new Tile(this, pos.x, pos.y);
     }
 
     /**
-     * Draw the map
+     * Get the id of the instance on a cell
      *
-     * @param ctx    The graphics context
-     * @param camera The scene camera
+     * @param x The x position of the cell
+     * @param y The y position of the cell
+     * @return The instance id, 0 for empty cells and cells outside the map
      */
-    public void drawSelf(GraphicsContext ctx, Camera camera) {
-        for (int x = 0; x < mapSize.x; x++) {
-            for (int y = 0; y < mapSize.y; y++) {
-                Placeable placeable = map[x][y].getPlaceable();
-                if (placeable == null) {
-                    continue;
-                }
-                if (placeable.actualPos.equals(new TilePos(x, y))) {
-                    placeable.drawSelf(ctx, camera);
-                }
-            }
+    public int getInstanceId(int x, int y) {
+        if (x < 0 || x >= mapSize.x || y < 0 || y >= mapSize.y) {
+            return 0;
+        }
+        if (save != null) {
+            save.decodeAround(this, x / Chunk.SIZE, y / Chunk.SIZE);
+        }
+        Chunk chunk = chunks[y / Chunk.SIZE * chunksX + x / Chunk.SIZE];
+        if (chunk == null) {
+            return 0;
         }
+        return chunk.getId(x % Chunk.SIZE, y % Chunk.SIZE);
     }
 
     /**
-     * Transform world space to tile space
+     * Get a placed instance by its id
      *
-     * @param worldSpace The original point
-     * @return The tile position
+     * @param id The instance id
+     * @return The placeable, or null for the id 0
      */
-    public TilePos worldToTileSpace(Point worldSpace) {
-        return new TilePos(worldSpace.x / 16, worldSpace.y / 16);
+    public Placeable getInstance(int id) {
+        if (id == 0) {
+            return null;
+        }
+        return placed.get(id - 1);
+    }
+
+    /**
+     * Is there a road on a cell?
+     *
+     * @param x The x position of the cell
+     * @param y The y position of the cell
+     * @return If there is a road, false for cells outside the map
+     */
+    public boolean isRoad(int x, int y) {
+        if (x < 0 || x >= mapSize.x || y < 0 || y >= mapSize.y) {
+            return false;
+        }
+        if (save != null) {
+            save.decodeAround(this, x / Chunk.SIZE, y / Chunk.SIZE);
+        }
+        Chunk chunk = chunks[y / Chunk.SIZE * chunksX + x / Chunk.SIZE];
+        return chunk != null && chunk.isRoad(x % Chunk.SIZE, y % Chunk.SIZE);
     }
 
     /**
-     * Update the resources
+     * Write an instance id into every cell covered by a placeable, allocating and freeing chunks as needed
+     *
+     * @param placeable The placeable
+     * @param id        The instance id, 0 to clear the cells
      */
-    private void updateResourceFlow() {
-        for (int x = 0; x < mapSize.x; x++) {
-            for (int y = 0; y < mapSize.y; y++) {
-                map[x][y].resetResources();
+    private void setFootprint(Placeable placeable, int id) {
+        TilePos pos = placeable.getActualPos();
+        boolean road = id != 0 && placeable.isRoad();
+        for (int x = pos.x; x < pos.x + placeable.getSize().x; x++) {
+            for (int y = pos.y; y < pos.y + placeable.getSize().y; y++) {
+                int index = y / Chunk.SIZE * chunksX + x / Chunk.SIZE;
+                if (chunks[index] == null) {
+                    if (id == 0) {
+                        continue;
+                    }
+                    chunks[index] = new Chunk();
+                }
+                chunks[index].set(x % Chunk.SIZE, y % Chunk.SIZE, id, road);
+                if (chunks[index].isEmpty()) {
+                    chunks[index] = null;
+                }
             }
         }
+    }
 
-        for (int x = 0; x < mapSize.x; x++) {
-            for (int y = 0; y < mapSize.y; y++) {
-                spreadResourceFrom(new TilePos(x, y));
+    /**
+     * Give a new version to every chunk a placeable or the roads next to it are drawn over
+     *
+     * @param placeable The placeable that was placed or removed
+     */
+    private void touchChunks(Placeable placeable) {
+        TilePos pos = placeable.getActualPos();
+        int minX = Math.max(0, pos.x - 1) / Chunk.SIZE;
+        int minY = Math.max(0, pos.y - 1) / Chunk.SIZE;
+        int maxX = Math.min(mapSize.x - 1, pos.x + placeable.getSize().x) / Chunk.SIZE;
+        int maxY = Math.min(mapSize.y - 1, pos.y + placeable.getSize().y) / Chunk.SIZE;
+        long version = versionCounter.incrementAndGet();
+        for (int y = minY; y <= maxY; y++) {
+            for (int x = minX; x <= maxX; x++) {
+                chunkVersions[y * chunksX + x] = version;
             }
         }
+    }
 
-        boolean[][] traversed = new boolean[mapSize.x][mapSize.y];
-        for (int x = 0; x < mapSize.x; x++) {
-            for (int y = 0; y < mapSize.y; y++) {
-                if (traversed[x][y]) {
+    /**
+     * Get a copy of the versions of the chunks
+     *
+     * @return The version of every chunk, row by row
+     */
+    public long[] getChunkVersions() {
+        return chunkVersions.clone();
+    }
+
+    /**
+     * Get the version of a chunk
+     *
+     * @param chunkX The x position of the chunk
+     * @param chunkY The y position of the chunk
+     * @return The version, changed whenever something drawn over the chunk changes
+     */
+    public long getChunkVersion(int chunkX, int chunkY) {
+        return chunkVersions[chunkY * chunksX + chunkX];
+    }
+
+    /**
+     * Get the instances whose top left tile is in a chunk
+     *
+     * @param chunkX The x position of the chunk
+     * @param chunkY The y position of the chunk
+     * @return The instances, in the order of their top left tile, row by row
+     */
+    public List<Placeable> getChunkInstances(int chunkX, int chunkY) {
+        if (save != null) {
+            save.decodeAround(this, chunkX, chunkY);
+        }
+        List<Placeable> found = new ArrayList<>();
+        Chunk chunk = chunks[chunkY * chunksX + chunkX];
+        if (chunk == null) {
+            return found;
+        }
+        for (int y = 0; y < Chunk.SIZE; y++) {
+            for (int x = 0; x < Chunk.SIZE; x++) {
+                int id = chunk.getId(x, y);
+                if (id == 0) {
                     continue;
                 }
-                if (!(map[x][y].isRoad())) {
-                    continue;
+                Placeable placeable = placed.get(id - 1);
+                TilePos pos = placeable.getActualPos();
+                if (pos.x == chunkX * Chunk.SIZE + x && pos.y == chunkY * Chunk.SIZE + y) {
+                    found.add(placeable);
                 }
+            }
+        }
+        return found;
+    }
 
-                List<Placeable> inLoop = new ArrayList<>();
+    /**
+     * Get the number of chunks allocated
+     *
+     * @return The number of chunks
+     */
+    int getChunkCount() {
+        int count = 0;
+        for (Chunk chunk : chunks) {
+            if (chunk != null) {
+                count++;
+            }
+        }
+        return count;
+    }
 
-                long electricityProduction = 0;
-                Queue<TilePos> toVisit = new LinkedList<>();
-                toVisit.add(new TilePos(x, y));
-                while (!toVisit.isEmpty()) {
-                    TilePos current = toVisit.remove();
-                    Placeable placeable = getTile(current).getPlaceable();
-                    if (placeable == null) {
-                        continue;
-                    }
-                    inLoop.add(placeable);
-                    if (!placeable.isRoad() || traversed[current.x][current.y]) {
-                        continue;
-                    }
+    /**
+     * Pack a cell position into a single int
+     *
+     * @param x The x position of the cell
+     * @param y The y position of the cell
+     * @return The packed position
+     */
+    public int pack(int x, int y) {
+        return y * mapSize.x + x;
+    }
 
-                    List<TilePos> neighbours = placeable.getNeighbours();
-                    for (TilePos neighbour : neighbours) {
-                        if (getTile(neighbour) == null) {
-                            continue;
-                        }
-                        electricityProduction += getTile(neighbour).getElectricityProduction();
-                        toVisit.add(neighbour);
-                    }
-                    traversed[current.x][current.y] = true;
-                }
+    /**
+     * Get the x position of a packed cell position
+     *
+     * @param packed The packed position
+     * @return The x position
+     */
+    public int unpackX(int packed) {
+        return packed % mapSize.x;
+    }
 
-                for (Placeable placeable : inLoop) {
-                    placeable.setElectricityProvided(electricityProduction >= 0);
-                }
-            }
+    /**
+     * Get the y position of a packed cell position
+     *
+     * @param packed The packed position
+     * @return The y position
+     */
+    public int unpackY(int packed) {
+        return packed / mapSize.x;
+    }
+
+    /**
+     * Get the key ordering positions the way the map is traversed, column by column
+     *
+     * @param pos The position
+     * @return The key
+     */
+    long getOrderKey(TilePos pos) {
+        return (long) pos.x * mapSize.y + pos.y;
+    }
+
+    /**
+     * Transform world space to tile space
+     *
+     * @param worldSpace The original point
+     * @return The tile position
+     */
+    public TilePos worldToTileSpace(Point worldSpace) {
+        return new TilePos(worldSpace.x / 16, worldSpace.y / 16);
+    }
+
+    /**
+     * Start a batch of edits
+     * <p>
+     * Placing and removing still updates the tiles, the balance and the population right
+     * away, so {@link #canPlace(Placeable, TilePos)} keeps checking against the running
+     * balance, but the resources are only recomputed once the batch is committed.
+     */
+    public void beginBatch() {
+        resourceFlow.beginBatch();
+    }
+
+    /**
+     * Commit the open batch of edits, recomputing the resources around all of them at once
+     * <p>
+     * A batch covering the whole map, like replaying a long autosave log, recomputes it in parallel.
+     */
+    public void commitBatch() {
+        resourceFlow.commitBatch();
+    }
+
+    /**
+     * Is there an open batch of edits?
+     *
+     * @return If there is an open batch
+     */
+    public boolean isBatching() {
+        return resourceFlow.isBatching();
+    }
+
+    /**
+     * Recompute the resources of the whole map
+     */
+    void updateResourceFlow() {
+        decodeAll();
+        resourceFlow.recomputeAll();
+        recalculateHappiness();
+    }
+
+    /**
+     * Get the decor at the center of a tile
+     *
+     * @param pos The position of the tile
+     * @return The decor
+     */
+    public long getDecor(TilePos pos) {
+        Point center = pos.getRealPos();
+        center.translate(8, 8);
+        if (save != null) {
+            decodeArea(center, save.getMaxDecorRadius());
         }
+        return decorField.get(center);
     }
 
     /**
@@ -316,7 +618,10 @@ public class Map implements Serializable {
      * @return The happiness
      */
     public double getHappiness() {
-        return happiness;
+        if (happinessWeight == 0) {
+            return 0;
+        }
+        return happinessTotal / happinessWeight;
     }
 
     /**
@@ -328,11 +633,29 @@ public class Map implements Serializable {
         return population;
     }
 
+    /**
+     * Get the sum of the happiness of every placeable
+     *
+     * @return The sum
+     */
+    double getHappinessTotal() {
+        return happinessTotal;
+    }
+
+    /**
+     * Get the sum of the happiness multipliers of every placeable
+     *
+     * @return The sum
+     */
+    double getHappinessWeight() {
+        return happinessWeight;
+    }
+
     /**
      * Collect taxes from the people
      */
     public void collectTaxes() {
-        money += (population * happiness) * 100 + 300;
+        money += (population * getHappiness()) * 100 + 300;
     }
 
     /**
@@ -345,69 +668,157 @@ public class Map implements Serializable {
     }
 
     /**
-     * Try to spread resources from a given tile
+     * Get the edits since the map was last saved in full
      *
-     * @param pos The point to spread resources from
+     * @return The journal
      */
-    private void spreadResourceFrom(TilePos pos) {
-        if (getTile(pos).getPlaceable() == null || !getTile(pos).getPlaceable().getActualPos().equals(pos)) {
-            return;
-        }
-        long waterProduction = getTile(pos).getWaterProduction();
-        long wasteProduction = getTile(pos).getWasteProduction();
-        if (waterProduction <= 0 && wasteProduction >= 0) {
-            return;
-        }
+    public EditJournal getJournal() {
+        return journal;
+    }
 
-        List<TilePos> neighbours = map[pos.x][pos.y].getPlaceable().getNeighbours();
+    /**
+     * Set the balance, when restoring a saved game
+     *
+     * @param money The balance
+     */
+    void setMoney(long money) {
+        this.money = money;
+    }
 
-        List<Road> roads = new ArrayList<>();
-        for (TilePos neighbour : neighbours) {
-            Tile tile = getTile(neighbour);
-            if (tile == null) {
-                continue;
-            }
-            if (tile.isRoad()) {
-                roads.add((Road) getTile(neighbour).getPlaceable());
-            }
+    /**
+     * Reset the map
+     */
+    public void reset() {
+        save = null;
+        Arrays.fill(chunks, null);
+        Arrays.fill(chunkVersions, versionCounter.incrementAndGet());
+        journal.reset();
+        for (Placeable placeable : placed) {
+            placeable.placedIndex = -1;
         }
+        placed.clear();
+        spatialIndex.clear();
+        decorField.clear();
+        population = 0;
+        happinessTotal = 0;
+        happinessWeight = 0;
+        money = 1000;
+    }
 
-        for (Road road : roads) {
-            long waterLeft = waterProduction / roads.size();
-            long wasteLeft = wasteProduction / roads.size();
-            Queue<TilePos> toVisit = new LinkedList<>();
-            toVisit.add(road.actualPos);
-            boolean[][] traversed = new boolean[mapSize.x][mapSize.y];
-            while (!toVisit.isEmpty() && (waterLeft > 0 || wasteLeft < 0)) {
-                TilePos current = toVisit.remove();
-                if (traversed[current.x][current.y] || !(getTile(current).isRoad())) {
-                    continue;
-                }
-                List<TilePos> roadNeighbours = getTile(current).getPlaceable().getNeighbours();
-                for (TilePos roadNeighbour : roadNeighbours) {
-                    if (getTile(roadNeighbour) == null) {
-                        continue;
-                    }
-                    waterLeft = getTile(roadNeighbour).pipeWater(waterLeft);
-                    wasteLeft = getTile(roadNeighbour).handleWaste(wasteLeft);
-                    toVisit.add(roadNeighbour);
+    /**
+     * Decode the chunks of a save only when they are needed, the map has to be empty
+     *
+     * @param save The save the map is made from
+     */
+    void setSave(SaveFile save) {
+        this.save = save;
+    }
+
+    /**
+     * Get the save the chunks not decoded yet are read from
+     *
+     * @return The save, null once the whole map is decoded
+     */
+    SaveFile getSave() {
+        return save;
+    }
+
+    /**
+     * Restore the totals of a save, before its chunks are decoded
+     *
+     * @param money           The balance
+     * @param population      The population
+     * @param happinessTotal  The sum of the happiness of every placeable
+     * @param happinessWeight The sum of the happiness multipliers of every placeable
+     */
+    void restoreTotals(long money, long population, double happinessTotal, double happinessWeight) {
+        this.money = money;
+        this.population = population;
+        this.happinessTotal = happinessTotal;
+        this.happinessWeight = happinessWeight;
+    }
+
+    /**
+     * Put back an instance decoded from a save, with the state it was saved with
+     * <p>
+     * Nothing around it is updated and no chunk is decoded, and the totals aren't changed, they
+     * are restored from the save. A road is left out of the road networks until its network is
+     * first needed.
+     *
+     * @param placeable The instance, at its position
+     * @return If it was put back, false if it overlaps an instance already on the map
+     */
+    boolean restore(Placeable placeable) {
+        TilePos pos = placeable.getActualPos();
+        for (int x = pos.x; x < pos.x + placeable.getSize().x; x++) {
+            for (int y = pos.y; y < pos.y + placeable.getSize().y; y++) {
+                Chunk chunk = chunks[y / Chunk.SIZE * chunksX + x / Chunk.SIZE];
+                if (chunk != null && chunk.getId(x % Chunk.SIZE, y % Chunk.SIZE) != 0) {
+                    return false;
                 }
-                traversed[current.x][current.y] = true;
             }
         }
+        if (placeable.isRoad()) {
+            ((Road) placeable).network = null;
+        }
+        register(placeable);
+        setFootprint(placeable, placeable.placedIndex + 1);
+        spatialIndex.add(placeable);
+        decorField.add(placeable);
+        return true;
     }
 
     /**
-     * Reset the map
+     * Take back an instance put back by {@link #restore(Placeable)}, when the rest of its chunk turns out to be invalid
+     *
+     * @param placeable The instance
      */
-    public void reset() {
-        for (int x = 0; x < mapSize.x; x++) {
-            for (int y = 0; y < mapSize.y; y++) {
-                map[x][y].place(null);
+    void unrestore(Placeable placeable) {
+        setFootprint(placeable, 0);
+        spatialIndex.remove(placeable);
+        decorField.remove(placeable);
+        unregister(placeable);
+    }
+
+    /**
+     * Decode the chunks of the save the map is made from whose decor an edit of a placeable can change,
+     * or whose decor can reach the placeable
+     *
+     * @param placeable The placed or removed placeable
+     */
+    private void decodeDecorArea(Placeable placeable) {
+        if (save != null) {
+            decodeArea(placeable.getCenter(), Math.max(placeable.getDecorRadius(), save.getMaxDecorRadius()));
+        }
+    }
+
+    /**
+     * Decode the chunks of the save the map is made from that an area of the world reaches into
+     *
+     * @param center The center of the area in world space
+     * @param radius The distance from the center the area reaches in world space
+     */
+    private void decodeArea(Point center, double radius) {
+        int minX = Math.max(0, (int) Math.floor((center.x - radius) / 16)) / Chunk.SIZE;
+        int minY = Math.max(0, (int) Math.floor((center.y - radius) / 16)) / Chunk.SIZE;
+        int maxX = Math.min(mapSize.x - 1, (int) Math.ceil((center.x + radius) / 16)) / Chunk.SIZE;
+        int maxY = Math.min(mapSize.y - 1, (int) Math.ceil((center.y + radius) / 16)) / Chunk.SIZE;
+        for (int y = minY; y <= maxY; y++) {
+            for (int x = minX; x <= maxX; x++) {
+                save.decodeAround(this, x, y);
             }
         }
-        population = 0;
-        happiness = 0;
-        money = 1000;
+    }
+
+    /**
+     * Decode every chunk of the save the map is made from that isn't decoded yet
+     */
+    private void decodeAll() {
+        if (save == null) {
+            return;
+        }
+        SaveFile decoding = save;
+        save = null;
+        decoding.decodeAll(this);
     }
 }
@@ -0,0 +1,197 @@
+package me.petercsala.NagyHazi;
+
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+
+import java.util.ArrayDeque;
+import java.util.List;
+
+/**
+ * Draws a map and the placeables on it
+ */
+public class MapRenderer {
+    /**
+     * The sprites of the placeables
+     */
+    private final SpriteAtlas sprites = new SpriteAtlas();
+
+    /**
+     * The size of the sides of a chunk layer in pixels
+     */
+    private static final int LAYER_SIZE = Chunk.SIZE * 16;
+
+    /**
+     * The off-screen canvas the chunk layers are drawn on
+     */
+    private final Canvas layerCanvas = new Canvas(LAYER_SIZE, LAYER_SIZE);
+    /**
+     * The parameters used to copy the off-screen canvas into a layer
+     */
+    private final SnapshotParameters layerParameters = new SnapshotParameters();
+    /**
+     * The drawn layer of every chunk, row by row, null if it isn't cached
+     */
+    private WritableImage[] layers = new WritableImage[0];
+    /**
+     * The version of the chunk every cached layer was drawn from
+     */
+    private long[] layerVersions = new long[0];
+    /**
+     * The frame every layer was last seen on
+     */
+    private long[] layerFrames = new long[0];
+    /**
+     * The layers of the chunks that went out of view, to be reused
+     */
+    private final ArrayDeque<WritableImage> freeLayers = new ArrayDeque<>();
+    /**
+     * The number of frames drawn so far
+     */
+    private long frameCount = 0;
+
+    /**
+     * Constructor
+     */
+    public MapRenderer() {
+        layerParameters.setFill(Color.TRANSPARENT);
+    }
+
+    /**
+     * Pack the sprites of the placeables, before anything is drawn
+     *
+     * @param placeables Every placeable that can be drawn
+     */
+    public void loadSprites(List<Placeable> placeables) {
+        sprites.build(placeables);
+    }
+
+    /**
+     * Draw the part of the map the camera sees
+     * <p>
+     * Every chunk in view is drawn once into a cached layer, which is only redrawn when the
+     * version of the chunk changes. Layers of chunks going out of view are reused for others.
+     * Chunks the snapshot doesn't hold yet, because the view moved since it was taken, are left empty.
+     *
+     * @param ctx    The graphics context
+     * @param camera The scene camera
+     * @param frame  The snapshot of the map to draw
+     */
+    public void draw(GraphicsContext ctx, Camera camera, FrameSnapshot frame) {
+        int chunkCount = frame.getChunksX() * frame.getChunksY();
+        if (layers.length != chunkCount) {
+            layers = new WritableImage[chunkCount];
+            layerVersions = new long[chunkCount];
+            layerFrames = new long[chunkCount];
+            freeLayers.clear();
+        }
+        frameCount++;
+
+        int cameraX = (int) camera.getX();
+        int cameraY = (int) camera.getY();
+        int minChunkX = Math.max(0, Math.floorDiv(cameraX, LAYER_SIZE));
+        int minChunkY = Math.max(0, Math.floorDiv(cameraY, LAYER_SIZE));
+        int maxChunkX = Math.min(frame.getChunksX() - 1, Math.floorDiv(cameraX + (int) Math.ceil(ctx.getCanvas().getWidth()), LAYER_SIZE));
+        int maxChunkY = Math.min(frame.getChunksY() - 1, Math.floorDiv(cameraY + (int) Math.ceil(ctx.getCanvas().getHeight()), LAYER_SIZE));
+        for (int chunkY = minChunkY; chunkY <= maxChunkY; chunkY++) {
+            for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+                FrameSnapshot.Slice slice = frame.getSlice(chunkX, chunkY);
+                if (slice == null) {
+                    continue;
+                }
+                int index = chunkY * frame.getChunksX() + chunkX;
+                layerFrames[index] = frameCount;
+                if (layers[index] == null || layerVersions[index] != slice.getVersion()) {
+                    drawLayer(frame, chunkX, chunkY);
+                }
+                ctx.drawImage(layers[index], chunkX * LAYER_SIZE - cameraX, chunkY * LAYER_SIZE - cameraY);
+            }
+        }
+
+        for (int i = 0; i < chunkCount; i++) {
+            if (layers[i] != null && layerFrames[i] != frameCount) {
+                freeLayers.add(layers[i]);
+                layers[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Draw the layer of a chunk
+     * <p>
+     * Instances are grouped by the chunk of their top left tile, so the chunks up to the size
+     * of the largest sprite before this one are checked too. Placing or removing an instance
+     * changes the version of every chunk it covers, so the version of this chunk is enough to
+     * tell when the layer is out of date. If one of those chunks isn't in the snapshot, the
+     * layer is drawn without it but not kept as up to date, so the next frame draws it again.
+     *
+     * @param frame  The snapshot of the map
+     * @param chunkX The x position of the chunk
+     * @param chunkY The y position of the chunk
+     */
+    private void drawLayer(FrameSnapshot frame, int chunkX, int chunkY) {
+        GraphicsContext layerCtx = layerCanvas.getGraphicsContext2D();
+        layerCtx.clearRect(0, 0, LAYER_SIZE, LAYER_SIZE);
+
+        int minX = chunkX * Chunk.SIZE;
+        int minY = chunkY * Chunk.SIZE;
+        int maxX = minX + Chunk.SIZE;
+        int maxY = minY + Chunk.SIZE;
+        int minSourceX = Math.max(0, (minX - frame.getMaxWidth() + 1) / Chunk.SIZE);
+        int minSourceY = Math.max(0, (minY - frame.getMaxHeight() + 1) / Chunk.SIZE);
+        boolean complete = true;
+        for (int sourceY = minSourceY; sourceY <= chunkY; sourceY++) {
+            for (int sourceX = minSourceX; sourceX <= chunkX; sourceX++) {
+                FrameSnapshot.Slice source = frame.getSlice(sourceX, sourceY);
+                if (source == null) {
+                    complete = false;
+                    continue;
+                }
+                for (int i = 0; i < source.getCount(); i++) {
+                    int x = source.getX(i);
+                    int y = source.getY(i);
+                    if (x >= maxX || y >= maxY || x + source.getWidth(i) <= minX || y + source.getHeight(i) <= minY) {
+                        continue;
+                    }
+                    draw(layerCtx, source, i, (x - minX) * 16, (y - minY) * 16);
+                }
+            }
+        }
+
+        int index = chunkY * frame.getChunksX() + chunkX;
+        if (layers[index] == null) {
+            layers[index] = freeLayers.poll();
+        }
+        layers[index] = layerCanvas.snapshot(layerParameters, layers[index]);
+        layerVersions[index] = complete ? frame.getSlice(chunkX, chunkY).getVersion() : -1;
+    }
+
+    /**
+     * Draw an instance
+     *
+     * @param ctx   The graphics context
+     * @param slice The slice holding the instance
+     * @param i     The index of the instance
+     * @param x     The x position to draw it at in camera space
+     * @param y     The y position to draw it at in camera space
+     */
+    private void draw(GraphicsContext ctx, FrameSnapshot.Slice slice, int i, int x, int y) {
+        sprites.draw(ctx, slice.getSprite(i), slice.getBitMask(i), x, y);
+    }
+
+    /**
+     * Get the graphic used on the building panel button
+     *
+     * @param placeable The placeable
+     * @return The graphic
+     */
+    public ImageView getButtonGraphic(Placeable placeable) {
+        ImageView imageView = sprites.getView(placeable.getSpritePath(), placeable.isRoad() ? 15 : -1);
+        imageView.setFitWidth(32);
+        imageView.setFitHeight(32);
+        return imageView;
+    }
+}
@@ -1,29 +1,31 @@
 package me.petercsala.NagyHazi;
 
-import javafx.scene.canvas.GraphicsContext;
-import javafx.scene.image.Image;
-import javafx.scene.image.ImageView;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 import java.awt.*;
 import java.io.*;
+import java.net.URL;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
 
 /**
  * Represents anything placeable in the world
  */
-public abstract class Placeable implements Cloneable, Serializable {
+public abstract class Placeable implements Cloneable {
     /**
-     * The sprite used by the placeable
+     * The path of the sprite used by the placeable, relative to the user resources
      */
-    protected Image sprite;
+    protected String spritePath;
     /**
      * The actual tile position of the placeable
      */
@@ -48,6 +50,10 @@ public abstract class Placeable implements Cloneable, Serializable {
      * The decor provided by the placeable
      */
     protected long decorProvided = 0;
+    /**
+     * The index of the placeable among the placed placeables of the map, -1 if not placed
+     */
+    int placedIndex = -1;
 
     /**
      * Clone the given placeable
@@ -64,21 +70,13 @@ public abstract class Placeable implements Cloneable, Serializable {
      */
     protected abstract void cloneFrom(Placeable placeable);
 
-    /**
-     * Draw the placeable
-     *
-     * @param ctx    The graphics context
-     * @param camera The scene camera
-     */
-    protected abstract void drawSelf(GraphicsContext ctx, Camera camera);
-
     /**
      * Is the placeable invalid
      *
      * @return If the placeable is invalid
      */
     protected boolean isInvalid() {
-        return sprite == null || name == null || description == null || cost == -1;
+        return spritePath == null || name == null || description == null || cost == -1;
     }
 
     /**
@@ -118,8 +116,44 @@ public abstract class Placeable implements Cloneable, Serializable {
      */
     public long getProvidedDecorAt(Point pos) {
         Point center = getCenter();
-        double d = (pos.x - center.x) * (pos.x - center.x) + (pos.y - center.y) * (pos.y - center.y);
-        return (long) (decorProvided * Math.exp(-d / 2 / decorProvided));
+        return getProvidedDecor(decorProvided, (pos.x - center.x) * (pos.x - center.x) + (pos.y - center.y) * (pos.y - center.y));
+    }
+
+    /**
+     * Get the decor a source provides at a distance
+     *
+     * @param decor           The decor provided by the source
+     * @param distanceSquared The squared distance in world space
+     * @return The decor
+     */
+    static long getProvidedDecor(long decor, double distanceSquared) {
+        if (decor == 0) {
+            return 0;
+        }
+        return (long) (decor * Math.exp(-distanceSquared / 2 / Math.abs(decor)));
+    }
+
+    /**
+     * Get the distance beyond which the provided decor is zero
+     *
+     * @return The distance in world space
+     */
+    public double getDecorRadius() {
+        return getDecorRadius(decorProvided);
+    }
+
+    /**
+     * Get the distance beyond which the decor of a source is zero
+     *
+     * @param decor The decor provided by the source
+     * @return The distance in world space
+     */
+    static double getDecorRadius(long decor) {
+        decor = Math.abs(decor);
+        if (decor <= 1) {
+            return 0;
+        }
+        return Math.sqrt(2 * decor * Math.log(decor)) + 1;
     }
 
     /**
@@ -278,11 +312,42 @@ public abstract class Placeable implements Cloneable, Serializable {
     }
 
     /**
-     * Get the graphic used on the building panel button
+     * Get the path of the sprite
      *
-     * @return The graphic
+     * @return The path, relative to the user resources
      */
-    public abstract ImageView getButtonGraphic();
+    public String getSpritePath() {
+        return spritePath;
+    }
+
+    /**
+     * Read the size of a sprite from the header of the image, without decoding it
+     *
+     * @param spritePath The path of the sprite, relative to the user resources
+     * @return The size in pixels
+     */
+    static Point readSpriteSize(String spritePath) {
+        URL url = Placeable.class.getClassLoader().getResource("userResources/" + spritePath);
+        if (url == null) {
+            throw new RuntimeException("Couldn't find sprite " + spritePath + "!");
+        }
+        try (InputStream input = url.openStream();
+             ImageInputStream imageInput = ImageIO.createImageInputStream(input)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInput);
+            if (!readers.hasNext()) {
+                throw new RuntimeException("Unknown image format in sprite " + spritePath + "!");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageInput);
+                return new Point(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Couldn't read sprite " + spritePath + "!", e);
+        }
+    }
 
     /**
      * Load all placeables
@@ -320,7 +385,7 @@ public abstract class Placeable implements Cloneable, Serializable {
                 && placeable.cost == cost
                 && placeable.decorProvided == decorProvided
                 && Objects.equals(placeable.size, size)
-                && Objects.equals(placeable.sprite, sprite);
+                && Objects.equals(placeable.spritePath, spritePath);
     }
 
     /**
@@ -493,32 +558,4 @@ public abstract class Placeable implements Cloneable, Serializable {
          */
         void setDecorProvided(long decor);
     }
-
-    /**
-     * Read the object from a stream
-     *
-     * @param inputStream The stream to read from
-     * @throws ClassNotFoundException Thrown, when the underlying interface throws a ClassNotFoundException
-     * @throws IOException            Thrown, when the underlying interface throws an IOException
-     */
-    private void readObject(ObjectInputStream inputStream) throws ClassNotFoundException, IOException {
-        name = (String) inputStream.readObject();
-        actualPos = (TilePos) inputStream.readObject();
-        Placeable placeable = Game.getPlaceable(name);
-        if (placeable == null) {
-            throw new IOException("Placeable doesn't exist!");
-        }
-        cloneFrom(placeable);
-    }
-
-    /**
-     * Write object to a stream
-     *
-     * @param outputStream The stream to write to
-     * @throws IOException Thrown, when the underlying interface throws an IOException
-     */
-    private void writeObject(ObjectOutputStream outputStream) throws IOException {
-        outputStream.writeObject(name);
-        outputStream.writeObject(actualPos);
-    }
 }
@@ -0,0 +1,495 @@
+package me.petercsala.NagyHazi;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Distributes water, waste and electricity through the road networks of a map
+ */
+public class ResourceFlow {
+    /**
+     * The number of buildings worth handing to another thread during a full recompute
+     */
+    private static final int BATCH_SIZE = 512;
+
+    /**
+     * The map the resources flow in
+     */
+    private final Map map;
+    /**
+     * The road networks of the map
+     */
+    private final RoadNetworks networks;
+    /**
+     * The scratch space for walking the networks
+     */
+    private Traversal traversal;
+    /**
+     * The placeables edited since the batch was opened, null when there is no open batch
+     */
+    private List<Placeable> pending;
+
+    /**
+     * Constructor
+     *
+     * @param map The map the resources flow in
+     */
+    public ResourceFlow(Map map) {
+        this.map = map;
+        networks = new RoadNetworks(map);
+    }
+
+    /**
+     * Get ready for a placeable to be placed or removed
+     * <p>
+     * The networks around it are built first if they were left unbuilt by a map decoded from a
+     * save, so building them doesn't already see the edit.
+     *
+     * @param placeable The placeable about to be placed or removed
+     */
+    public void editing(Placeable placeable) {
+        networks.findAround(placeable);
+    }
+
+    /**
+     * Update the resources after a placeable was placed
+     *
+     * @param placeable The placed placeable
+     */
+    public void placed(Placeable placeable) {
+        if (placeable.isRoad()) {
+            networks.addRoad((Road) placeable);
+        } else if (pending == null && carriesOnlyElectricity(placeable)) {
+            refreshElectricity(networks.addBuilding(placeable));
+            map.removeHappiness(placeable);
+            refreshElectricity(placeable, getTraversal());
+            map.addHappiness(placeable);
+            return;
+        } else {
+            networks.addBuilding(placeable);
+        }
+        edited(placeable);
+    }
+
+    /**
+     * Update the resources after a placeable was removed
+     *
+     * @param placeable The removed placeable
+     */
+    public void removed(Placeable placeable) {
+        if (placeable.isRoad()) {
+            networks.removeRoad((Road) placeable);
+        } else if (pending == null && carriesOnlyElectricity(placeable)) {
+            refreshElectricity(networks.removeBuilding(placeable));
+            return;
+        } else {
+            networks.removeBuilding(placeable);
+        }
+        edited(placeable);
+    }
+
+    /**
+     * Recompute the area of an edit, or remember it until the batch is committed
+     *
+     * @param placeable The placed or removed placeable
+     */
+    private void edited(Placeable placeable) {
+        if (pending != null) {
+            pending.add(placeable);
+        } else {
+            recomputeAround(Collections.singletonList(placeable));
+        }
+    }
+
+    /**
+     * Start deferring the recomputes until {@link #commitBatch()}
+     * <p>
+     * The road networks are still kept up to date with every edit, only walking them is
+     * deferred.
+     */
+    public void beginBatch() {
+        if (pending != null) {
+            throw new RuntimeException("A batch is already open!");
+        }
+        pending = new ArrayList<>();
+    }
+
+    /**
+     * Recompute the area of every edit since {@link #beginBatch()} in one go
+     * <p>
+     * A batch with at least as many edits as there are placeables on the map, like replaying a
+     * long autosave log, touches about every network anyway, so the whole map is
+     * recomputed by {@link #recomputeAll()} instead, solving the independent groups in parallel.
+     */
+    public void commitBatch() {
+        if (pending == null) {
+            throw new RuntimeException("There is no open batch!");
+        }
+        List<Placeable> edited = pending;
+        pending = null;
+        if (edited.isEmpty()) {
+            return;
+        }
+        if (edited.size() >= map.getInstanceCount()) {
+            recomputeAll();
+        } else {
+            recomputeAround(edited);
+        }
+    }
+
+    /**
+     * Is there an open batch?
+     *
+     * @return If the recomputes are deferred
+     */
+    public boolean isBatching() {
+        return pending != null;
+    }
+
+    /**
+     * Does the placeable only take part in the electricity network?
+     * <p>
+     * Such buildings don't change the water and waste flowing past them, so their networks
+     * only have to be revisited when their supply flips.
+     *
+     * @param placeable The placeable
+     * @return If it only uses or produces electricity
+     */
+    private boolean carriesOnlyElectricity(Placeable placeable) {
+        return placeable.getWaterProduction() == 0 && placeable.getWasteProduction() == 0;
+    }
+
+    /**
+     * Recompute the resources of every placeable on the map
+     * <p>
+     * The map is split into groups of networks that no building connects, and the groups are
+     * solved in parallel. Every group only touches its own roads and buildings, so the result
+     * doesn't depend on the number of threads.
+     */
+    public void recomputeAll() {
+        List<Placeable> buildings = new ArrayList<>();
+        List<Placeable> roads = new ArrayList<>();
+        for (Placeable placeable : map.getPlaced()) {
+            if (placeable.isRoad()) {
+                roads.add(placeable);
+            } else {
+                buildings.add(placeable);
+            }
+        }
+        buildings.sort(Comparator.comparingLong(building -> map.getOrderKey(building.getActualPos())));
+        networks.rebuild(roads);
+
+        for (Placeable building : buildings) {
+            map.removeHappiness(building);
+        }
+
+        List<List<Placeable>> batches = new ArrayList<>();
+        List<Placeable> batch = new ArrayList<>();
+        Traversal traversal = getTraversal();
+        traversal.start();
+        for (Placeable building : buildings) {
+            int id = building.placedIndex + 1;
+            if (!traversal.visit(id)) {
+                continue;
+            }
+            traversal.getQueue().add(id);
+            collectGroup(traversal);
+            batch.addAll(traversal.getFound());
+            if (batch.size() >= BATCH_SIZE) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        solveAll(batches);
+
+        for (Placeable building : buildings) {
+            map.addHappiness(building);
+        }
+    }
+
+    /**
+     * Solve batches of closed groups, on the common pool if there is more than one
+     *
+     * @param batches The batches, each holding whole groups
+     */
+    private void solveAll(List<List<Placeable>> batches) {
+        if (batches.size() <= 1) {
+            for (List<Placeable> batch : batches) {
+                solve(batch, getTraversal());
+            }
+            return;
+        }
+
+        ThreadLocal<Traversal> traversals = ThreadLocal.withInitial(() -> new Traversal(map));
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (List<Placeable> batch : batches) {
+            tasks.add(() -> {
+                solve(batch, traversals.get());
+                return null;
+            });
+        }
+        for (Future<Void> result : ForkJoinPool.commonPool().invokeAll(tasks)) {
+            try {
+                result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while solving the resource flow!", e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Failed to solve the resource flow!", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Recompute the resources of the networks touching edited areas
+     * <p>
+     * Road networks are only independent of each other as long as no building connects them,
+     * so the recomputed area is grown through the buildings as well, until it holds every
+     * network that could have seen the edits.
+     *
+     * @param edited The placed or removed placeables
+     */
+    private void recomputeAround(List<Placeable> edited) {
+        Traversal traversal = getTraversal();
+        traversal.start();
+        IntQueue toVisit = traversal.getQueue();
+        for (Placeable placeable : edited) {
+            TilePos pos = placeable.getActualPos();
+            Point size = placeable.getSize();
+            for (int x = pos.x - 1; x <= pos.x + size.x; x++) {
+                for (int y = pos.y - 1; y <= pos.y + size.y; y++) {
+                    int id = map.getInstanceId(x, y);
+                    if (id != 0 && traversal.visit(id)) {
+                        toVisit.add(id);
+                    }
+                }
+            }
+        }
+
+        collectGroup(traversal);
+        List<Placeable> buildings = traversal.getFound();
+        for (Placeable building : buildings) {
+            map.removeHappiness(building);
+        }
+        solve(buildings, traversal);
+        for (Placeable building : buildings) {
+            map.addHappiness(building);
+        }
+    }
+
+    /**
+     * Walk from the queued instances to every network and building connected to them
+     * <p>
+     * The buildings reached are collected into {@link Traversal#getFound()}, in map order.
+     *
+     * @param traversal The current walk, with the starting instances queued and visited
+     */
+    private void collectGroup(Traversal traversal) {
+        IntQueue toVisit = traversal.getQueue();
+        List<Placeable> buildings = traversal.getFound();
+        buildings.clear();
+        while (!toVisit.isEmpty()) {
+            Placeable current = map.getInstance(toVisit.remove());
+            TilePos currentPos = current.getActualPos();
+            if (current.isRoad()) {
+                for (int i = 0; i < 4; i++) {
+                    int id = map.getInstanceId(currentPos.x + Traversal.DX[i], currentPos.y + Traversal.DY[i]);
+                    if (id != 0 && traversal.visit(id)) {
+                        toVisit.add(id);
+                    }
+                }
+                continue;
+            }
+
+            buildings.add(current);
+            int borderCount = traversal.loadBorder(current);
+            for (int i = 0; i < borderCount; i++) {
+                visitRoad(traversal, traversal.getCell(i));
+            }
+        }
+        traversal.sortFound();
+    }
+
+    /**
+     * Queue up the road on a cell, if there is one that wasn't visited yet
+     *
+     * @param traversal The current walk
+     * @param cell      The packed position of the cell
+     */
+    private void visitRoad(Traversal traversal, int cell) {
+        int x = map.unpackX(cell);
+        int y = map.unpackY(cell);
+        if (map.isRoad(x, y)) {
+            int id = map.getInstanceId(x, y);
+            if (traversal.visit(id)) {
+                traversal.getQueue().add(id);
+            }
+        }
+    }
+
+    /**
+     * Solve the resource flow for closed groups of networks
+     * <p>
+     * Only the buildings and roads of the groups are touched, the happiness of the map has to
+     * be kept up to date by the caller.
+     *
+     * @param buildings The buildings in the groups, in map order within every group
+     * @param traversal The scratch space to use
+     */
+    private void solve(List<Placeable> buildings, Traversal traversal) {
+        for (Placeable building : buildings) {
+            building.resetResources();
+        }
+
+        collectSupplies(buildings, traversal);
+        int supplyCount = traversal.sortSupplies();
+        for (int i = 0; i < supplyCount; i++) {
+            distribute(traversal.getSortedSupply(i), traversal);
+        }
+
+        for (Placeable building : buildings) {
+            refreshElectricity(building, traversal);
+        }
+    }
+
+    /**
+     * Pool the water and waste capacity of the producers for every network they touch
+     * <p>
+     * The output of a producer is split evenly between the roads it touches, and each network
+     * gets the share of its own roads. The networks come in map order, and their starting roads
+     * in the order of the producers, so the distribution is always the same.
+     *
+     * @param buildings The buildings in the groups, in map order within every group
+     * @param traversal The scratch space to pool the supplies in
+     */
+    private void collectSupplies(List<Placeable> buildings, Traversal traversal) {
+        traversal.clearSupplies();
+        for (Placeable building : buildings) {
+            long water = Math.max(0, building.getWaterProduction());
+            long waste = Math.min(0, building.getWasteProduction());
+            if (water == 0 && waste == 0) {
+                continue;
+            }
+
+            int borderCount = traversal.loadBorder(building);
+            int roads = 0;
+            for (int i = 0; i < borderCount; i++) {
+                if (isRoad(traversal.getCell(i))) {
+                    roads++;
+                }
+            }
+
+            int road = 0;
+            for (int i = 0; i < borderCount; i++) {
+                int cell = traversal.getCell(i);
+                if (!isRoad(cell)) {
+                    continue;
+                }
+                Road network = networks.find((Road) map.getInstance(map.getInstanceId(map.unpackX(cell), map.unpackY(cell))));
+                Traversal.Supply supply = traversal.getSupply(network);
+                supply.water += water * (road + 1) / roads - water * road / roads;
+                supply.waste += waste * (road + 1) / roads - waste * road / roads;
+                supply.toVisit.add(cell);
+                road++;
+            }
+        }
+    }
+
+    /**
+     * Distribute the pooled water and waste capacity of a network in a single walk
+     * <p>
+     * The walk starts from every road next to a producer at once, so the buildings closest to
+     * any producer are served first.
+     *
+     * @param supply    The supply of the network
+     * @param traversal The scratch space to use
+     */
+    private void distribute(Traversal.Supply supply, Traversal traversal) {
+        traversal.start();
+        IntQueue toVisit = supply.toVisit;
+        long waterLeft = supply.water;
+        long wasteLeft = supply.waste;
+        while (!toVisit.isEmpty() && (waterLeft > 0 || wasteLeft < 0)) {
+            int current = toVisit.remove();
+            int x = map.unpackX(current);
+            int y = map.unpackY(current);
+            if (!traversal.visit(map.getInstanceId(x, y))) {
+                continue;
+            }
+            for (int direction = 0; direction < 4; direction++) {
+                int neighbourX = x + Traversal.DX[direction];
+                int neighbourY = y + Traversal.DY[direction];
+                Placeable neighbour = map.getInstance(map.getInstanceId(neighbourX, neighbourY));
+                if (neighbour == null) {
+                    continue;
+                }
+                if (neighbour.isRoad()) {
+                    toVisit.add(map.pack(neighbourX, neighbourY));
+                } else {
+                    waterLeft = neighbour.pipeWater(waterLeft);
+                    wasteLeft = neighbour.handleWaste(wasteLeft);
+                }
+            }
+        }
+    }
+
+    /**
+     * Is there a road on a cell?
+     *
+     * @param cell The packed position of the cell
+     * @return If there is a road
+     */
+    private boolean isRoad(int cell) {
+        return map.isRoad(map.unpackX(cell), map.unpackY(cell));
+    }
+
+    /**
+     * Update the electricity supply of a building from the networks it touches
+     *
+     * @param building  The building
+     * @param traversal The scratch space to use
+     */
+    private void refreshElectricity(Placeable building, Traversal traversal) {
+        Road network = networks.getSupplyingNetwork(building, traversal);
+        if (network != null) {
+            building.setElectricityProvided(networks.isSupplied(network));
+        }
+    }
+
+    /**
+     * Update the electricity supply of every building touching the given networks
+     *
+     * @param changed The root roads of the networks
+     */
+    private void refreshElectricity(List<Road> changed) {
+        for (Road network : changed) {
+            for (Placeable building : networks.getBuildings(network)) {
+                map.removeHappiness(building);
+                refreshElectricity(building, getTraversal());
+                map.addHappiness(building);
+            }
+        }
+    }
+
+    /**
+     * Get the scratch space for walking the networks
+     *
+     * @return The traversal
+     */
+    private Traversal getTraversal() {
+        if (traversal == null) {
+            traversal = new Traversal(map);
+        }
+        return traversal;
+    }
+}
@@ -1,12 +1,6 @@
 package me.petercsala.NagyHazi;
 
-import javafx.geometry.Rectangle2D;
-import javafx.scene.canvas.GraphicsContext;
-import javafx.scene.image.Image;
-import javafx.scene.image.ImageView;
-
 import java.awt.*;
-import java.util.List;
 
 /**
  * Represents a road in the game
@@ -17,6 +11,23 @@ public class Road extends Placeable {
      */
     int bitMask = 0;
 
+    /**
+     * The parent of the road in its network, the road itself for the root of the network
+     */
+    Road network = this;
+    /**
+     * The rank of the road in its network
+     */
+    int networkRank = 0;
+    /**
+     * The electricity balance of the network, only kept up to date in the root
+     */
+    long networkBalance = 0;
+    /**
+     * The smallest map order key of the network, only kept up to date in the root
+     */
+    long networkKey = 0;
+
     /**
      * Clone the road as a placeable
      *
@@ -29,7 +40,7 @@ public class Road extends Placeable {
         copy.name = name;
         copy.cost = cost;
         copy.description = description;
-        copy.sprite = sprite;
+        copy.spritePath = spritePath;
         copy.actualPos = actualPos;
         copy.size = size;
         copy.decorProvided = decorProvided;
@@ -50,21 +61,18 @@ public class Road extends Placeable {
         name = placeable.name;
         cost = placeable.cost;
         description = placeable.description;
-        sprite = placeable.sprite;
+        spritePath = placeable.spritePath;
         size = placeable.size;
         decorProvided = placeable.decorProvided;
     }
 
     /**
-     * Draw the road
+     * Get the mask describing the orientation of the road
      *
-     * @param ctx    The graphics context
-     * @param camera The scene camera
+     * @return The mask, one bit for every neighbouring road
      */
-    @Override
-    protected void drawSelf(GraphicsContext ctx, Camera camera) {
-        Point position = camera.worldToCameraSpace(actualPos.getRealPos());
-        ctx.drawImage(sprite, (bitMask % 4) * 16, (float) ((bitMask / 4) * 16), 16, 16, position.x, position.y, 16, 16);
+    public int getBitMask() {
+        return bitMask;
     }
 
     /**
@@ -144,18 +152,12 @@ public class Road extends Placeable {
      */
     @Override
     public void update(Map map) {
-        List<TilePos> neighbours = getNeighbours();
-
         bitMask = 0;
-        int i = 0;
-        for (TilePos neighbourPos : neighbours) {
-            Tile neighbour = map.getTile(neighbourPos);
-            if (neighbour != null && neighbour.isRoad()) {
+        for (int i = 0; i < 4; i++) {
+            if (map.isRoad(actualPos.x + Traversal.DX[i], actualPos.y + Traversal.DY[i])) {
                 bitMask |= 1 << i;
             }
-            i++;
         }
-
     }
 
     /**
@@ -246,20 +248,6 @@ public class Road extends Placeable {
         return true;
     }
 
-    /**
-     * Get the graphic for the build panel button
-     *
-     * @return The graphic
-     */
-    @Override
-    public ImageView getButtonGraphic() {
-        ImageView imageView = new ImageView(sprite);
-        imageView.setViewport(new Rectangle2D(48, 48, 16, 16));
-        imageView.setFitWidth(32);
-        imageView.setFitHeight(32);
-        return imageView;
-    }
-
     @Override
     public boolean equals(Object obj) {
         if (!(obj instanceof Road)) {
@@ -295,7 +283,7 @@ public class Road extends Placeable {
          * @param path The path
          */
         public void setSprite(String path) {
-            road.sprite = new Image(String.valueOf(getClass().getClassLoader().getResource("userResources/" + path)));
+            road.spritePath = path;
         }
 
         /**
@@ -0,0 +1,364 @@
+package me.petercsala.NagyHazi;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Keeps track of the connected road networks of a map and their electricity balance
+ * <p>
+ * The networks are stored as a union-find forest over the roads. Adding a road only merges
+ * networks, removing one rebuilds the network it was part of, as that might have split it.
+ * Roads decoded from a save start out without a network, and their network is built the first
+ * time one of them is looked up.
+ */
+public class RoadNetworks {
+    /**
+     * The map the roads are in
+     */
+    private final Map map;
+    /**
+     * The scratch space for walking the networks
+     */
+    private Traversal traversal;
+    /**
+     * The scratch space for building the networks of decoded roads, as that can happen in the middle of another walk
+     */
+    private Traversal buildTraversal;
+
+    /**
+     * Constructor
+     *
+     * @param map The map the roads are in
+     */
+    public RoadNetworks(Map map) {
+        this.map = map;
+    }
+
+    /**
+     * Find the network a road belongs to, building it first if the road has none yet
+     *
+     * @param road The road
+     * @return The root road of the network
+     */
+    public Road find(Road road) {
+        if (road.network == null) {
+            if (buildTraversal == null) {
+                buildTraversal = new Traversal(map);
+            }
+            buildTraversal.start();
+            buildTraversal.visit(road.placedIndex + 1);
+            rebuildNetwork(road, buildTraversal);
+            return road;
+        }
+        Road root = road;
+        while (root.network != root) {
+            root = root.network;
+        }
+        while (road != root) {
+            Road next = road.network;
+            road.network = root;
+            road = next;
+        }
+        return root;
+    }
+
+    /**
+     * Merge the networks of two roads
+     *
+     * @param a The first road
+     * @param b The second road
+     */
+    private void union(Road a, Road b) {
+        a = find(a);
+        b = find(b);
+        if (a == b) {
+            return;
+        }
+        if (a.networkRank < b.networkRank) {
+            Road swap = a;
+            a = b;
+            b = swap;
+        }
+        b.network = a;
+        if (a.networkRank == b.networkRank) {
+            a.networkRank++;
+        }
+        a.networkBalance += b.networkBalance;
+        a.networkKey = Math.min(a.networkKey, b.networkKey);
+    }
+
+    /**
+     * Make a road a network on its own
+     *
+     * @param road The road
+     */
+    private void makeNetwork(Road road) {
+        road.network = road;
+        road.networkRank = 0;
+        road.networkBalance = 0;
+        road.networkKey = map.getOrderKey(road.getActualPos());
+    }
+
+    /**
+     * Add a freshly placed road
+     *
+     * @param road The road
+     */
+    public void addRoad(Road road) {
+        makeNetwork(road);
+        connect(road);
+    }
+
+    /**
+     * Merge a road with the roads next to it, and add the electricity of the buildings next to it
+     *
+     * @param road The road
+     */
+    private void connect(Road road) {
+        TilePos pos = road.getActualPos();
+        for (int i = 0; i < 4; i++) {
+            Placeable neighbour = map.getInstance(map.getInstanceId(pos.x + Traversal.DX[i], pos.y + Traversal.DY[i]));
+            if (neighbour == null) {
+                continue;
+            }
+            if (neighbour.isRoad()) {
+                union(road, (Road) neighbour);
+            } else {
+                find(road).networkBalance += neighbour.getElectricityProduction();
+            }
+        }
+    }
+
+    /**
+     * Remove a road that has just been taken off the map
+     *
+     * @param road The road
+     */
+    public void removeRoad(Road road) {
+        Traversal traversal = getTraversal();
+        traversal.start();
+        TilePos pos = road.getActualPos();
+        for (int i = 0; i < 4; i++) {
+            int x = pos.x + Traversal.DX[i];
+            int y = pos.y + Traversal.DY[i];
+            if (map.isRoad(x, y) && traversal.visit(map.getInstanceId(x, y))) {
+                rebuildNetwork((Road) map.getInstance(map.getInstanceId(x, y)), traversal);
+            }
+        }
+    }
+
+    /**
+     * Rebuild the network containing a road from scratch
+     *
+     * @param start     The road to start from, already visited
+     * @param traversal The current walk
+     */
+    private void rebuildNetwork(Road start, Traversal traversal) {
+        makeNetwork(start);
+        IntQueue toVisit = traversal.getQueue();
+        toVisit.add(start.placedIndex + 1);
+        while (!toVisit.isEmpty()) {
+            Road current = (Road) map.getInstance(toVisit.remove());
+            if (current != start) {
+                current.network = start;
+                current.networkRank = 0;
+                start.networkRank = 1;
+                start.networkKey = Math.min(start.networkKey, map.getOrderKey(current.getActualPos()));
+            }
+            TilePos pos = current.getActualPos();
+            for (int i = 0; i < 4; i++) {
+                int id = map.getInstanceId(pos.x + Traversal.DX[i], pos.y + Traversal.DY[i]);
+                Placeable neighbour = map.getInstance(id);
+                if (neighbour == null) {
+                    continue;
+                }
+                if (!neighbour.isRoad()) {
+                    start.networkBalance += neighbour.getElectricityProduction();
+                } else if (traversal.visit(id)) {
+                    toVisit.add(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the networks of the roads around a placeable, so the ones not built yet are built
+     *
+     * @param placeable The placeable
+     */
+    public void findAround(Placeable placeable) {
+        Traversal traversal = getTraversal();
+        int borderCount = traversal.loadBorder(placeable);
+        for (int i = 0; i < borderCount; i++) {
+            Road road = getRoad(traversal.getCell(i));
+            if (road != null) {
+                find(road);
+            }
+        }
+    }
+
+    /**
+     * Rebuild every network from scratch
+     * <p>
+     * Every road is left pointing straight at its root, so finding the networks afterwards
+     * doesn't write anything, and separate networks can be read from multiple threads.
+     *
+     * @param roads All the roads on the map
+     */
+    public void rebuild(List<Placeable> roads) {
+        for (Placeable road : roads) {
+            makeNetwork((Road) road);
+        }
+        for (Placeable road : roads) {
+            connect((Road) road);
+        }
+        for (Placeable road : roads) {
+            find((Road) road);
+        }
+    }
+
+    /**
+     * Add the electricity of a freshly placed building to the networks around it
+     *
+     * @param building The building
+     * @return The networks whose supply changed
+     */
+    public List<Road> addBuilding(Placeable building) {
+        return changeBalance(building, building.getElectricityProduction());
+    }
+
+    /**
+     * Take the electricity of a removed building out of the networks around it
+     *
+     * @param building The building
+     * @return The networks whose supply changed
+     */
+    public List<Road> removeBuilding(Placeable building) {
+        return changeBalance(building, -building.getElectricityProduction());
+    }
+
+    /**
+     * Change the balance of the networks around a building, once for every road it touches
+     *
+     * @param building The building
+     * @param delta    The change for every touching road
+     * @return The networks whose supply changed
+     */
+    private List<Road> changeBalance(Placeable building, long delta) {
+        IdentityHashMap<Road, Long> deltas = new IdentityHashMap<>();
+        if (delta != 0) {
+            Traversal traversal = getTraversal();
+            int borderCount = traversal.loadBorder(building);
+            for (int i = 0; i < borderCount; i++) {
+                Road road = getRoad(traversal.getCell(i));
+                if (road != null) {
+                    deltas.merge(find(road), delta, Long::sum);
+                }
+            }
+        }
+
+        List<Road> changed = new ArrayList<>();
+        for (java.util.Map.Entry<Road, Long> entry : deltas.entrySet()) {
+            Road root = entry.getKey();
+            boolean wasSupplied = isSupplied(root);
+            root.networkBalance += entry.getValue();
+            if (wasSupplied != isSupplied(root)) {
+                changed.add(root);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Is the electricity requirement of a network met?
+     *
+     * @param network The root road of the network
+     * @return If the electricity is provided
+     */
+    public boolean isSupplied(Road network) {
+        return network.networkBalance >= 0;
+    }
+
+    /**
+     * Get the network deciding the electricity supply of a building
+     * <p>
+     * When a building touches multiple networks, the one furthest along in map order wins.
+     *
+     * @param building  The building
+     * @param traversal The scratch space to load the border of the building into
+     * @return The root road of the network, or null if the building touches no road
+     */
+    public Road getSupplyingNetwork(Placeable building, Traversal traversal) {
+        Road supplying = null;
+        int borderCount = traversal.loadBorder(building);
+        for (int i = 0; i < borderCount; i++) {
+            Road road = getRoad(traversal.getCell(i));
+            if (road == null) {
+                continue;
+            }
+            Road root = find(road);
+            if (supplying == null || root.networkKey > supplying.networkKey) {
+                supplying = root;
+            }
+        }
+        return supplying;
+    }
+
+    /**
+     * Get the buildings touching a network
+     *
+     * @param network The root road of the network
+     * @return The buildings
+     */
+    public List<Placeable> getBuildings(Road network) {
+        List<Placeable> buildings = new ArrayList<>();
+        Traversal traversal = getTraversal();
+        traversal.start();
+        IntQueue toVisit = traversal.getQueue();
+        traversal.visit(network.placedIndex + 1);
+        toVisit.add(network.placedIndex + 1);
+        while (!toVisit.isEmpty()) {
+            TilePos pos = map.getInstance(toVisit.remove()).getActualPos();
+            for (int i = 0; i < 4; i++) {
+                int id = map.getInstanceId(pos.x + Traversal.DX[i], pos.y + Traversal.DY[i]);
+                if (id == 0 || !traversal.visit(id)) {
+                    continue;
+                }
+                if (map.getInstance(id).isRoad()) {
+                    toVisit.add(id);
+                } else {
+                    buildings.add(map.getInstance(id));
+                }
+            }
+        }
+        return buildings;
+    }
+
+    /**
+     * Get the road on a cell
+     *
+     * @param cell The packed position of the cell
+     * @return The road, or null if there is none
+     */
+    private Road getRoad(int cell) {
+        int x = map.unpackX(cell);
+        int y = map.unpackY(cell);
+        if (!map.isRoad(x, y)) {
+            return null;
+        }
+        return (Road) map.getInstance(map.getInstanceId(x, y));
+    }
+
+    /**
+     * Get the scratch space for walking the networks
+     *
+     * @return The traversal
+     */
+    private Traversal getTraversal() {
+        if (traversal == null) {
+            traversal = new Traversal(map);
+        }
+        return traversal;
+    }
+}
@@ -0,0 +1,220 @@
+package me.petercsala.NagyHazi;
+
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.scene.paint.Color;
+import javafx.stage.DirectoryChooser;
+import javafx.stage.Modality;
+import javafx.stage.Stage;
+import javafx.stage.Window;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * A dialog listing the saves in a directory with their thumbnails, only reading the header of each save
+ * <p>
+ * The header of an autosave with a log only shows the game as it was at the last full save, so
+ * such saves are marked as having newer edits.
+ */
+public class SaveBrowser {
+    /**
+     * The colours of the thumbnail pixels by what covers them
+     */
+    private static final Color[] THUMBNAIL_COLORS = {
+            Color.rgb(5, 77, 0),
+            Color.rgb(90, 90, 90),
+            Color.rgb(200, 160, 60),
+            Color.rgb(70, 120, 200),
+    };
+
+    /**
+     * The directory listed
+     */
+    private File directory;
+    /**
+     * The headers read so far by the file, null for files that couldn't be read
+     */
+    private final HashMap<File, SaveHeader> headers = new HashMap<>();
+    /**
+     * The thumbnails drawn so far by the file
+     */
+    private final HashMap<File, WritableImage> thumbnails = new HashMap<>();
+    /**
+     * The saves listed that have a log of edits made after their header was written
+     */
+    private final HashSet<File> logged = new HashSet<>();
+    /**
+     * The list of the saves
+     */
+    private final ListView<File> list = new ListView<>();
+    /**
+     * The label showing the directory listed
+     */
+    private final Label directoryLabel = new Label();
+    /**
+     * The save chosen, null until one is
+     */
+    private File chosen;
+
+    /**
+     * Constructor
+     *
+     * @param directory The directory to list first
+     */
+    public SaveBrowser(File directory) {
+        this.directory = directory;
+        list.setCellFactory(view -> new SaveCell());
+        list.setPrefSize(420, 400);
+    }
+
+    /**
+     * Show the dialog and wait for the player to choose a save
+     *
+     * @param owner The window the dialog belongs to
+     * @return The chosen save, null if none was chosen
+     */
+    public File showAndWait(Window owner) {
+        Stage stage = new Stage();
+        stage.initOwner(owner);
+        stage.initModality(Modality.WINDOW_MODAL);
+        stage.setTitle("Load Game");
+
+        Button browseButton = new Button("Browse...");
+        browseButton.setOnAction(actionEvent -> {
+            DirectoryChooser directoryChooser = new DirectoryChooser();
+            directoryChooser.setInitialDirectory(directory);
+            File selected = directoryChooser.showDialog(stage);
+            if (selected != null) {
+                directory = selected;
+                refresh();
+            }
+        });
+        Button loadButton = new Button("Load");
+        loadButton.disableProperty().bind(list.getSelectionModel().selectedItemProperty().isNull());
+        loadButton.setOnAction(actionEvent -> {
+            chosen = list.getSelectionModel().getSelectedItem();
+            stage.close();
+        });
+        Button cancelButton = new Button("Cancel");
+        cancelButton.setOnAction(actionEvent -> stage.close());
+        list.setOnMouseClicked(mouseEvent -> {
+            if (mouseEvent.getClickCount() == 2 && list.getSelectionModel().getSelectedItem() != null) {
+                chosen = list.getSelectionModel().getSelectedItem();
+                stage.close();
+            }
+        });
+
+        HBox buttons = new HBox(10, browseButton, loadButton, cancelButton);
+        buttons.setAlignment(Pos.CENTER_RIGHT);
+        VBox root = new VBox(10, directoryLabel, list, buttons);
+        root.setPadding(new Insets(10));
+
+        refresh();
+        stage.setScene(new Scene(root));
+        stage.showAndWait();
+        return chosen;
+    }
+
+    /**
+     * List the saves of the current directory again
+     */
+    private void refresh() {
+        directoryLabel.setText(directory.getAbsolutePath());
+        headers.clear();
+        thumbnails.clear();
+        logged.clear();
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".cbs"));
+        if (files == null) {
+            files = new File[0];
+        }
+        for (File file : files) {
+            if (new File(SaveDelta.getLogPath(file.getPath())).exists()) {
+                logged.add(file);
+            }
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(b.lastModified(), a.lastModified()));
+        list.getItems().setAll(files);
+    }
+
+    /**
+     * Get the header of a save, reading it the first time it is shown
+     *
+     * @param file The save
+     * @return The header, null if it couldn't be read
+     */
+    private SaveHeader getHeader(File file) {
+        if (!headers.containsKey(file)) {
+            try {
+                headers.put(file, SaveHeader.read(file.getPath()));
+            } catch (IOException e) {
+                headers.put(file, null);
+            }
+        }
+        return headers.get(file);
+    }
+
+    /**
+     * Draw the thumbnail of a save
+     *
+     * @param header The header of the save
+     * @return The thumbnail
+     */
+    private static WritableImage getThumbnail(SaveHeader header) {
+        WritableImage image = new WritableImage(SaveHeader.THUMBNAIL_SIZE, SaveHeader.THUMBNAIL_SIZE);
+        PixelWriter writer = image.getPixelWriter();
+        for (int y = 0; y < SaveHeader.THUMBNAIL_SIZE; y++) {
+            for (int x = 0; x < SaveHeader.THUMBNAIL_SIZE; x++) {
+                int kind = header.getThumbnailPixel(x, y);
+                writer.setColor(x, y, THUMBNAIL_COLORS[kind >= 0 && kind < THUMBNAIL_COLORS.length ? kind : 0]);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * A row of the list, showing the thumbnail and the details of a save
+     */
+    private class SaveCell extends ListCell<File> {
+        /**
+         * Show a save in the row
+         *
+         * @param file  The save
+         * @param empty Is the row empty?
+         */
+        @Override
+        protected void updateItem(File file, boolean empty) {
+            super.updateItem(file, empty);
+            if (empty || file == null) {
+                setText(null);
+                setGraphic(null);
+                return;
+            }
+            SaveHeader header = getHeader(file);
+            if (header == null) {
+                setText(file.getName() + "\nUnreadable save");
+                setGraphic(null);
+                return;
+            }
+            setText(file.getName()
+                    + "\n" + header.getGameDate().getDateString()
+                    + "\nPopulation: " + header.getPopulation() + "  Money: " + header.getMoney()
+                    + "\nMap: " + header.getMapSize().x + "x" + header.getMapSize().y
+                    + (logged.contains(file) ? "\nHas newer autosaved edits than shown" : ""));
+            setGraphic(new ImageView(thumbnails.computeIfAbsent(file, key -> getThumbnail(header))));
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package me.petercsala.NagyHazi;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * The edits made to a map since the previous save, appended to the log next to a full save
+ * <p>
+ * Every segment of the log starts with a marker and the length of its content, and ends with a
+ * checksum of the content, so a segment cut short by a crash is noticed and left out on replay.
+ * The content is the balance and the date after the edits, then the edits themselves.
+ */
+public class SaveDelta {
+    /**
+     * The first four bytes of every segment
+     */
+    static final int MAGIC = 0x43425344;
+
+    /**
+     * The edits
+     */
+    private final List<EditJournal.Edit> edits;
+    /**
+     * The balance after the edits
+     */
+    private final long money;
+    /**
+     * The game time after the edits
+     */
+    private final GameDate gameDate;
+
+    /**
+     * Constructor, taking the edits out of the journal of the map
+     *
+     * @param map      The edited map
+     * @param gameDate The game time
+     */
+    public SaveDelta(Map map, GameDate gameDate) {
+        edits = map.getJournal().take();
+        money = map.getMoney();
+        this.gameDate = new GameDate(gameDate.getYear(), gameDate.getMonth(), gameDate.getDay());
+    }
+
+    /**
+     * Get the path of the log next to a full save
+     *
+     * @param savePath The path of the full save
+     * @return The path of the log
+     */
+    public static String getLogPath(String savePath) {
+        return savePath + ".log";
+    }
+
+    /**
+     * Write the delta as a segment of a log
+     *
+     * @param stream The stream to write to
+     * @throws IOException Thrown, when the stream can't be written
+     */
+    public void write(OutputStream stream) throws IOException {
+        ByteArrayOutputStream contentBytes = new ByteArrayOutputStream();
+        DataOutputStream content = new DataOutputStream(contentBytes);
+        content.writeLong(money);
+        content.writeInt(gameDate.getYear());
+        content.writeInt(gameDate.getMonth());
+        content.writeInt(gameDate.getDay());
+        SaveFile.writeVarInt(content, edits.size());
+        for (EditJournal.Edit edit : edits) {
+            content.writeByte(edit.op);
+            if (edit.op == EditJournal.PLACE) {
+                byte[] name = edit.name.getBytes(StandardCharsets.UTF_8);
+                content.writeShort(name.length);
+                content.write(name);
+            }
+            if (edit.op != EditJournal.RESET) {
+                SaveFile.writeVarInt(content, edit.x);
+                SaveFile.writeVarInt(content, edit.y);
+            }
+        }
+
+        CRC32 checksum = new CRC32();
+        checksum.update(contentBytes.toByteArray());
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream));
+        output.writeInt(MAGIC);
+        output.writeInt(contentBytes.size());
+        contentBytes.writeTo(output);
+        output.writeLong(checksum.getValue());
+        output.flush();
+    }
+
+    /**
+     * Replay the complete segments of a log onto a map
+     * <p>
+     * The edits are replayed in one batch. On a map made from a save, they only decode the chunks
+     * they reach, and the batch is recomputed around them unless they outnumber the placeables.
+     *
+     * @param map     The map built from the full save
+     * @param logPath The path of the log
+     * @return The game time after the last replayed segment, null if there were none
+     * @throws IOException Thrown, when the log can't be read or an edit doesn't fit the map
+     */
+    public static GameDate replay(Map map, String logPath) throws IOException {
+        ByteBuffer log;
+        try (FileChannel channel = FileChannel.open(Paths.get(logPath), StandardOpenOption.READ)) {
+            log = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        GameDate gameDate = null;
+        map.beginBatch();
+        while (log.remaining() >= 16) {
+            if (log.getInt() != MAGIC) {
+                break;
+            }
+            int length = log.getInt();
+            if (length < 0 || log.remaining() < length + 8) {
+                break;
+            }
+            byte[] content = new byte[length];
+            log.get(content);
+            CRC32 checksum = new CRC32();
+            checksum.update(content);
+            if (log.getLong() != checksum.getValue()) {
+                break;
+            }
+            gameDate = replaySegment(map, ByteBuffer.wrap(content));
+        }
+        map.commitBatch();
+        map.getJournal().clear();
+        return gameDate;
+    }
+
+    /**
+     * Replay the edits of a segment onto a map
+     *
+     * @param map     The map
+     * @param content The content of the segment
+     * @return The game time after the segment
+     * @throws IOException Thrown, when an edit doesn't fit the map
+     */
+    private static GameDate replaySegment(Map map, ByteBuffer content) throws IOException {
+        try {
+            long money = content.getLong();
+            GameDate gameDate = new GameDate(content.getInt(), content.getInt(), content.getInt());
+            int count = SaveFile.readVarInt(content);
+            for (int i = 0; i < count; i++) {
+                int op = content.get();
+                if (op == EditJournal.RESET) {
+                    map.commitBatch();
+                    map.reset();
+                    map.beginBatch();
+                    continue;
+                }
+                String name = null;
+                if (op == EditJournal.PLACE) {
+                    byte[] nameBytes = new byte[content.getShort() & 0xFFFF];
+                    content.get(nameBytes);
+                    name = new String(nameBytes, StandardCharsets.UTF_8);
+                }
+                TilePos pos = new TilePos(SaveFile.readVarInt(content), SaveFile.readVarInt(content));
+                if (op == EditJournal.REMOVE) {
+                    map.remove(pos);
+                } else if (op == EditJournal.PLACE) {
+                    Placeable placeable = Catalog.get(name);
+                    if (placeable == null) {
+                        throw new IOException("Unknown placeable " + name + " in the log!");
+                    }
+                    if (!map.isFree(placeable, pos)) {
+                        throw new IOException("Overlapping placeables in the log!");
+                    }
+                    map.place(placeable, pos);
+                } else {
+                    throw new IOException("Invalid edit in the log!");
+                }
+            }
+            map.setMoney(money);
+            return gameDate;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Invalid segment in the log!", e);
+        }
+    }
+}
@@ -0,0 +1,738 @@
+package me.petercsala.NagyHazi;
+
+import java.awt.Point;
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A saved game in the binary save format
+ * <p>
+ * The file starts with a fixed size {@link SaveHeader}, followed by a table of the names of the
+ * placeable types used. After that comes an index with the offset
+ * and the instance count of every chunk, the length of the blocks, and a block of instances for every chunk. Every instance
+ * is the distance from the previous instance in the chunk and a type id, both as variable length
+ * ints, followed by its state: the bitmask of a road, or the resources and the decor of a building.
+ * <p>
+ * A save read from a file is memory mapped. Opening it only checks that the index points inside
+ * the file, the instances of a chunk are checked and made when the map first needs the chunk. The state of the
+ * instances and the totals in the header are restored as they were saved, so nothing is recomputed
+ * until the map is edited. A save to be written copies everything it needs from the map when it is
+ * made, so it can be written from another thread while the game goes on. The chunks of a lazily
+ * loaded map that weren't decoded yet are copied as they were read, and the thumbnail is drawn
+ * only when the save is written.
+ */
+public class SaveFile {
+    /**
+     * The saved map, null until it is made from a read save
+     */
+    private Map map;
+    /**
+     * The header of the save
+     */
+    private final SaveHeader header;
+    /**
+     * The size of the saved map
+     */
+    private final Point mapSize;
+
+    /**
+     * The instances of a save to be written, as their chunk, cell in the chunk and index packed together
+     */
+    private long[] records;
+    /**
+     * The type id of every instance of a save to be written
+     */
+    private int[] typeIds;
+    /**
+     * The state of every instance of a save to be written, one after the other
+     */
+    private byte[] states;
+    /**
+     * Where the state of every instance starts in the states, with the end of the last one at the end
+     */
+    private int[] stateStarts;
+
+    /**
+     * The blocks of a save to be written copied from the chunks of the save its map was made from
+     * that weren't decoded yet, one after the other, null if there are none
+     */
+    private byte[] copied;
+    /**
+     * Where the copied block of every chunk ends, the block of a chunk starts where the previous one ends
+     */
+    private int[] copiedEnds;
+    /**
+     * The number of instances in the copied block of every chunk
+     */
+    private int[] copiedCounts;
+
+    /**
+     * The content of a read save, null for a save to be written
+     */
+    private ByteBuffer data;
+    /**
+     * The placeable types of the save by their id
+     */
+    private Placeable[] types;
+    /**
+     * The position of the chunk index in a read save
+     */
+    private int indexStart;
+    /**
+     * The position of the first chunk block in a read save
+     */
+    private int blocksStart;
+    /**
+     * Where the block of every chunk of a read save ends, relative to the first block
+     */
+    private int[] blockEnds;
+    /**
+     * The number of chunks of a read save that turned out to be invalid when decoded
+     */
+    private int invalidChunks;
+    /**
+     * The number of instances in the chunks of a read save not decoded yet
+     */
+    private int undecoded;
+    /**
+     * The distance the decor of any instance of a read save can reach in world space
+     */
+    private double maxDecorRadius;
+    /**
+     * The number of chunks an instance of a read save can reach into to the right of its own
+     */
+    private int reachX;
+    /**
+     * The number of chunks an instance of a read save can reach into below its own
+     */
+    private int reachY;
+    /**
+     * Has the block of every chunk of a read save been decoded onto the map?
+     */
+    private boolean[] decoded;
+
+    /**
+     * Constructor, copying the state to save
+     *
+     * @param map      The map to save
+     * @param gameDate The game time to save
+     */
+    public SaveFile(Map map, GameDate gameDate) {
+        this.map = map;
+        header = new SaveHeader(map, gameDate);
+        mapSize = header.getMapSize();
+        capture(map);
+    }
+
+    /**
+     * Constructor reading the header of a save
+     *
+     * @param data The content of the save
+     * @throws IOException Thrown, when the content isn't a valid save
+     */
+    private SaveFile(ByteBuffer data) throws IOException {
+        this.data = data;
+        header = SaveHeader.read(data);
+        mapSize = header.getMapSize();
+        try {
+            int typeCount = data.getInt();
+            if (typeCount < 0 || typeCount > data.remaining()) {
+                throw new IOException("Invalid placeable table in the save!");
+            }
+            types = new Placeable[typeCount];
+            for (int i = 0; i < types.length; i++) {
+                byte[] name = new byte[data.getShort() & 0xFFFF];
+                data.get(name);
+                types[i] = Catalog.get(new String(name, StandardCharsets.UTF_8));
+                if (types[i] == null) {
+                    throw new IOException("Unknown placeable " + new String(name, StandardCharsets.UTF_8) + " in the save!");
+                }
+                reachX = Math.max(reachX, (types[i].getSize().x + Chunk.SIZE - 2) / Chunk.SIZE);
+                reachY = Math.max(reachY, (types[i].getSize().y + Chunk.SIZE - 2) / Chunk.SIZE);
+                maxDecorRadius = Math.max(maxDecorRadius, types[i].getDecorRadius());
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("The save file is cut short!", e);
+        }
+        indexStart = data.position();
+        long chunkCount = (long) getChunksX() * getChunksY();
+        if (indexStart + chunkCount * 8 + 4 > data.limit()) {
+            throw new IOException("The save file is cut short!");
+        }
+        blocksStart = indexStart + (int) chunkCount * 8 + 4;
+        int blocksLength = data.getInt(blocksStart - 4);
+        if (blocksLength != data.limit() - blocksStart) {
+            throw new IOException("The save file is cut short!");
+        }
+        checkIndex(blocksLength);
+    }
+
+    /**
+     * Check that the block of every chunk of a read save starts after the previous one and inside the file
+     * <p>
+     * Only the index is read, the blocks themselves are checked when they are decoded.
+     *
+     * @param blocksLength The length of the blocks
+     * @throws IOException Thrown, when the index isn't valid
+     */
+    private void checkIndex(int blocksLength) throws IOException {
+        blockEnds = new int[getChunksX() * getChunksY()];
+        int end = blocksLength;
+        for (int chunk = blockEnds.length - 1; chunk >= 0; chunk--) {
+            int offset = data.getInt(indexStart + chunk * 8);
+            int count = data.getInt(indexStart + chunk * 8 + 4);
+            if (count < 0 || count > blocksLength) {
+                throw new IOException("Invalid chunk index in the save!");
+            }
+            blockEnds[chunk] = end;
+            if (count == 0) {
+                continue;
+            }
+            if (offset < 0 || offset > end || count > end - offset) {
+                throw new IOException("Invalid chunk index in the save!");
+            }
+            undecoded += count;
+            end = offset;
+        }
+    }
+
+    /**
+     * Open a save file, mapping it into memory
+     *
+     * @param path The path of the file
+     * @return The save
+     * @throws IOException Thrown, when the file can't be read or isn't a valid save
+     */
+    public static SaveFile open(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            return new SaveFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Read a save from a stream
+     *
+     * @param stream The stream to read from
+     * @return The save
+     * @throws IOException Thrown, when the stream can't be read or isn't a valid save
+     */
+    public static SaveFile read(InputStream stream) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = stream.read(buffer)) != -1) {
+            content.write(buffer, 0, read);
+        }
+        return new SaveFile(ByteBuffer.wrap(content.toByteArray()));
+    }
+
+    /**
+     * Get the header of the save
+     *
+     * @return The header
+     */
+    public SaveHeader getHeader() {
+        return header;
+    }
+
+    /**
+     * Get the saved game time
+     *
+     * @return The game time
+     */
+    public GameDate getGameDate() {
+        return header.getGameDate();
+    }
+
+    /**
+     * Get the saved map, making it on first use
+     * <p>
+     * The map starts out with only the totals of the header, and decodes the chunks of the
+     * save as they are needed, see {@link #decodeAround(Map, int, int)}.
+     *
+     * @return The map
+     */
+    public Map getMap() {
+        if (map == null) {
+            Map loaded = new Map(mapSize.x, mapSize.y);
+            loaded.restoreTotals(header.getMoney(), header.getPopulation(),
+                    header.getHappinessTotal(), header.getHappinessWeight());
+            decoded = new boolean[getChunksX() * getChunksY()];
+            loaded.setSave(this);
+            map = loaded;
+        }
+        return map;
+    }
+
+    /**
+     * Get the number of chunks in a row
+     *
+     * @return The number of chunks
+     */
+    private int getChunksX() {
+        return (mapSize.x + Chunk.SIZE - 1) / Chunk.SIZE;
+    }
+
+    /**
+     * Get the number of chunks in a column
+     *
+     * @return The number of chunks
+     */
+    private int getChunksY() {
+        return (mapSize.y + Chunk.SIZE - 1) / Chunk.SIZE;
+    }
+
+    /**
+     * Get the number of instances saved in a chunk, without decoding it
+     *
+     * @param chunkX The x position of the chunk
+     * @param chunkY The y position of the chunk
+     * @return The number of instances
+     */
+    public int getInstanceCount(int chunkX, int chunkY) {
+        return getInstanceCount(chunkY * getChunksX() + chunkX);
+    }
+
+    /**
+     * Get the number of instances saved in a chunk of a read save, without decoding it
+     *
+     * @param chunk The index of the chunk, row by row
+     * @return The number of instances
+     */
+    private int getInstanceCount(int chunk) {
+        return data.getInt(indexStart + chunk * 8 + 4);
+    }
+
+    /**
+     * Get the number of instances in the chunks of a read save not decoded yet
+     *
+     * @return The number of instances
+     */
+    int getUndecodedCount() {
+        return undecoded;
+    }
+
+    /**
+     * Get the distance the decor of any instance of a read save can reach
+     *
+     * @return The distance in world space
+     */
+    double getMaxDecorRadius() {
+        return maxDecorRadius;
+    }
+
+    /**
+     * Get the number of chunks of a read save that turned out to be invalid when decoded
+     * <p>
+     * An invalid chunk is left empty, the totals of the header still count what was in it.
+     *
+     * @return The number of chunks
+     */
+    public int getInvalidChunkCount() {
+        return invalidChunks;
+    }
+
+    /**
+     * Get a buffer holding only the block of a chunk of a read save
+     *
+     * @param chunk The index of the chunk, row by row
+     * @return The buffer
+     */
+    private ByteBuffer getBlock(int chunk) {
+        ByteBuffer block = data.duplicate();
+        block.limit(blocksStart + blockEnds[chunk]);
+        block.position(blocksStart + data.getInt(indexStart + chunk * 8));
+        return block;
+    }
+
+    /**
+     * Decode the chunks of a read save whose instances can reach into a chunk, unless they are decoded already
+     *
+     * @param map    The map made from the save
+     * @param chunkX The x position of the chunk
+     * @param chunkY The y position of the chunk
+     */
+    void decodeAround(Map map, int chunkX, int chunkY) {
+        for (int y = Math.max(0, chunkY - reachY); y <= chunkY; y++) {
+            for (int x = Math.max(0, chunkX - reachX); x <= chunkX; x++) {
+                if (!decoded[y * getChunksX() + x]) {
+                    decode(map, x, y);
+                }
+            }
+        }
+    }
+
+    /**
+     * Decode every chunk of a read save not decoded yet
+     *
+     * @param map The map made from the save
+     */
+    void decodeAll(Map map) {
+        for (int y = 0; y < getChunksY(); y++) {
+            for (int x = 0; x < getChunksX(); x++) {
+                if (!decoded[y * getChunksX() + x]) {
+                    decode(map, x, y);
+                }
+            }
+        }
+    }
+
+    /**
+     * Decode a chunk of a read save and put its instances back on the map with their saved state
+     * <p>
+     * Every instance is checked to fit the map without overlapping what is already on it. If one
+     * doesn't, or the block doesn't hold exactly its instances, the instances put back are taken
+     * off again, the chunk is reported and left empty.
+     *
+     * @param map    The map made from the save
+     * @param chunkX The x position of the chunk
+     * @param chunkY The y position of the chunk
+     */
+    private void decode(Map map, int chunkX, int chunkY) {
+        int chunk = chunkY * getChunksX() + chunkX;
+        decoded[chunk] = true;
+        int count = getInstanceCount(chunk);
+        if (count == 0) {
+            return;
+        }
+        undecoded -= count;
+        ByteBuffer block = getBlock(chunk);
+        List<Placeable> restored = new ArrayList<>();
+        try {
+            int cell = 0;
+            for (int i = 0; i < count; i++) {
+                cell += readVarInt(block);
+                int typeId = readVarInt(block);
+                if (typeId < 0 || typeId >= types.length || cell < 0 || cell >= Chunk.SIZE * Chunk.SIZE) {
+                    throw new IOException("Invalid instance in the save!");
+                }
+                TilePos pos = new TilePos(chunkX * Chunk.SIZE + cell % Chunk.SIZE, chunkY * Chunk.SIZE + cell / Chunk.SIZE);
+                Placeable type = types[typeId];
+                if (pos.x + type.getSize().x >= mapSize.x || pos.y + type.getSize().y >= mapSize.y) {
+                    throw new IOException("Invalid instance in the save!");
+                }
+                Placeable placeable = type.clone(pos);
+                readState(block, placeable);
+                if (!map.restore(placeable)) {
+                    throw new IOException("Overlapping placeables in the save!");
+                }
+                restored.add(placeable);
+            }
+            if (block.hasRemaining()) {
+                throw new IOException("Invalid instance count in the save!");
+            }
+        } catch (IOException | BufferUnderflowException e) {
+            for (int i = restored.size() - 1; i >= 0; i--) {
+                map.unrestore(restored.get(i));
+            }
+            invalidChunks++;
+            new IOException("Invalid chunk " + chunkX + ", " + chunkY + " in the save!", e).printStackTrace();
+        }
+    }
+
+    /**
+     * Write the state of an instance
+     *
+     * @param output    The stream to write to
+     * @param placeable The instance
+     * @throws IOException Thrown, when the stream can't be written
+     */
+    private static void writeState(DataOutput output, Placeable placeable) throws IOException {
+        if (placeable.isRoad()) {
+            output.writeByte(((Road) placeable).getBitMask());
+            return;
+        }
+        Building building = (Building) placeable;
+        writeVarLong(output, building.getReceivedWater());
+        writeVarLong(output, building.getHandledWaste());
+        output.writeBoolean(building.isElectricityProvided());
+        writeVarLong(output, building.getAreaDecor());
+    }
+
+    /**
+     * Read the state of an instance written by {@link #writeState(DataOutput, Placeable)}
+     *
+     * @param input     The buffer to read from
+     * @param placeable The instance to restore the state of
+     * @throws IOException Thrown, when a number isn't valid
+     */
+    private static void readState(ByteBuffer input, Placeable placeable) throws IOException {
+        if (placeable.isRoad()) {
+            ((Road) placeable).bitMask = input.get() & 0xF;
+            return;
+        }
+        long receivedWater = readVarLong(input);
+        long handledWaste = readVarLong(input);
+        boolean electricityProvided = input.get() != 0;
+        long areaDecor = readVarLong(input);
+        ((Building) placeable).restoreResources(receivedWater, handledWaste, electricityProvided, areaDecor);
+    }
+
+    /**
+     * Skip the state of an instance written by {@link #writeState(DataOutput, Placeable)}
+     *
+     * @param input The buffer to read from
+     * @param type  The type of the instance
+     * @throws IOException Thrown, when a number isn't valid
+     */
+    private static void skipState(ByteBuffer input, Placeable type) throws IOException {
+        if (type.isRoad()) {
+            input.get();
+            return;
+        }
+        readVarLong(input);
+        readVarLong(input);
+        input.get();
+        readVarLong(input);
+    }
+
+    /**
+     * Copy the instances of a map into the records
+     * <p>
+     * For a map made from a save, the types of the save keep their ids, so the blocks of the
+     * chunks not decoded yet can be copied as they are.
+     *
+     * @param map The map
+     */
+    private void capture(Map map) {
+        List<Placeable> typeList = new ArrayList<>();
+        HashMap<String, Integer> ids = new HashMap<>();
+        SaveFile source = map.getSave();
+        if (source != null) {
+            for (Placeable type : source.types) {
+                ids.put(type.name, typeList.size());
+                typeList.add(type);
+            }
+            copyUndecoded(source);
+        }
+        List<Placeable> placed = map.getDecodedPlaced();
+        records = new long[placed.size()];
+        typeIds = new int[placed.size()];
+        stateStarts = new int[placed.size() + 1];
+        ByteArrayOutputStream stateBytes = new ByteArrayOutputStream();
+        DataOutputStream stateOutput = new DataOutputStream(stateBytes);
+        try {
+            for (int i = 0; i < records.length; i++) {
+                Placeable placeable = placed.get(i);
+                Integer typeId = ids.get(placeable.name);
+                if (typeId == null) {
+                    typeId = typeList.size();
+                    ids.put(placeable.name, typeId);
+                    typeList.add(placeable);
+                }
+                TilePos pos = placeable.getActualPos();
+                int chunk = pos.y / Chunk.SIZE * getChunksX() + pos.x / Chunk.SIZE;
+                int cell = pos.y % Chunk.SIZE * Chunk.SIZE + pos.x % Chunk.SIZE;
+                records[i] = ((long) chunk * Chunk.SIZE * Chunk.SIZE + cell) << 32 | i;
+                typeIds[i] = typeId;
+                stateStarts[i] = stateOutput.size();
+                writeState(stateOutput, placeable);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to copy the state of the map!", e);
+        }
+        stateStarts[records.length] = stateOutput.size();
+        states = stateBytes.toByteArray();
+        types = typeList.toArray(new Placeable[0]);
+    }
+
+    /**
+     * Copy the blocks of the chunks of a read save that weren't decoded yet
+     *
+     * @param source The save the map was made from
+     */
+    private void copyUndecoded(SaveFile source) {
+        int chunkCount = getChunksX() * getChunksY();
+        copiedEnds = new int[chunkCount];
+        copiedCounts = new int[chunkCount];
+        ByteArrayOutputStream copiedBytes = new ByteArrayOutputStream();
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            if (!source.decoded[chunk] && source.getInstanceCount(chunk) > 0) {
+                copiedCounts[chunk] = source.getInstanceCount(chunk);
+                ByteBuffer block = source.getBlock(chunk);
+                byte[] bytes = new byte[block.remaining()];
+                block.get(bytes);
+                copiedBytes.write(bytes, 0, bytes.length);
+            }
+            copiedEnds[chunk] = copiedBytes.size();
+        }
+        copied = copiedBytes.toByteArray();
+    }
+
+    /**
+     * Draw the instances of a copied block onto the thumbnail
+     * <p>
+     * The block wasn't checked yet, so drawing stops at the first invalid instance. The block
+     * is reported once its chunk is decoded.
+     *
+     * @param block The block
+     * @param chunk The index of the chunk, row by row
+     * @param count The number of instances in the block
+     */
+    private void cover(ByteBuffer block, int chunk, int count) {
+        try {
+            int cell = 0;
+            for (int i = 0; i < count; i++) {
+                cell += readVarInt(block);
+                int typeId = readVarInt(block);
+                if (typeId < 0 || typeId >= types.length || cell < 0 || cell >= Chunk.SIZE * Chunk.SIZE) {
+                    return;
+                }
+                cover(chunk, cell, types[typeId]);
+                skipState(block, types[typeId]);
+            }
+        } catch (IOException | BufferUnderflowException e) {
+            // Left out of the thumbnail
+        }
+    }
+
+    /**
+     * Draw an instance onto the thumbnail
+     *
+     * @param chunk The index of its chunk, row by row
+     * @param cell  The index of its top left cell in the chunk, row by row
+     * @param type  The type of the instance
+     */
+    private void cover(int chunk, int cell, Placeable type) {
+        header.cover(new TilePos(chunk % getChunksX() * Chunk.SIZE + cell % Chunk.SIZE,
+                chunk / getChunksX() * Chunk.SIZE + cell / Chunk.SIZE), type);
+    }
+
+    /**
+     * Write the save to a stream
+     * <p>
+     * A save made from a map only uses its own copy of the state, so this can run on any thread.
+     * The thumbnail of the header is drawn here from the copy.
+     *
+     * @param stream The stream to write to
+     * @throws IOException Thrown, when the stream can't be written
+     */
+    public void write(OutputStream stream) throws IOException {
+        if (records == null) {
+            capture(getMap());
+        }
+        long[] records = this.records.clone();
+        Arrays.sort(records);
+
+        int chunkCount = getChunksX() * getChunksY();
+        int[] offsets = new int[chunkCount];
+        int[] counts = new int[chunkCount];
+        ByteArrayOutputStream blockBytes = new ByteArrayOutputStream();
+        DataOutputStream blocks = new DataOutputStream(blockBytes);
+        int next = 0;
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            offsets[chunk] = blocks.size();
+            if (copied != null && copiedCounts[chunk] > 0) {
+                int start = chunk == 0 ? 0 : copiedEnds[chunk - 1];
+                blocks.write(copied, start, copiedEnds[chunk] - start);
+                counts[chunk] = copiedCounts[chunk];
+                cover(ByteBuffer.wrap(copied, start, copiedEnds[chunk] - start), chunk, counts[chunk]);
+            }
+            int previousCell = 0;
+            for (; next < records.length && (records[next] >>> 32) / (Chunk.SIZE * Chunk.SIZE) == chunk; next++) {
+                int cell = (int) ((records[next] >>> 32) % (Chunk.SIZE * Chunk.SIZE));
+                int i = (int) records[next];
+                counts[chunk]++;
+                writeVarInt(blocks, cell - previousCell);
+                writeVarInt(blocks, typeIds[i]);
+                blocks.write(states, stateStarts[i], stateStarts[i + 1] - stateStarts[i]);
+                cover(chunk, cell, types[typeIds[i]]);
+                previousCell = cell;
+            }
+        }
+
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream));
+        header.write(output);
+        output.writeInt(types.length);
+        for (Placeable type : types) {
+            byte[] bytes = type.name.getBytes(StandardCharsets.UTF_8);
+            output.writeShort(bytes.length);
+            output.write(bytes);
+        }
+        for (int i = 0; i < chunkCount; i++) {
+            output.writeInt(offsets[i]);
+            output.writeInt(counts[i]);
+        }
+        output.writeInt(blockBytes.size());
+        blockBytes.writeTo(output);
+        output.flush();
+    }
+
+    /**
+     * Write an unsigned int in as few bytes as possible, 7 bits at a time
+     *
+     * @param output The stream to write to
+     * @param value  The value
+     * @throws IOException Thrown, when the stream can't be written
+     */
+    static void writeVarInt(DataOutput output, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            output.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte(value);
+    }
+
+    /**
+     * Write a signed long in as few bytes as possible, zigzag encoded so small negative values stay short
+     *
+     * @param output The stream to write to
+     * @param value  The value
+     * @throws IOException Thrown, when the stream can't be written
+     */
+    static void writeVarLong(DataOutput output, long value) throws IOException {
+        long zigZag = (value << 1) ^ (value >> 63);
+        while ((zigZag & ~0x7FL) != 0) {
+            output.writeByte((int) (zigZag & 0x7F) | 0x80);
+            zigZag >>>= 7;
+        }
+        output.writeByte((int) zigZag);
+    }
+
+    /**
+     * Read a signed long written by {@link #writeVarLong(DataOutput, long)}
+     *
+     * @param input The buffer to read from
+     * @return The value
+     * @throws IOException Thrown, when the number isn't valid
+     */
+    static long readVarLong(ByteBuffer input) throws IOException {
+        long zigZag = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = input.get() & 0xFF;
+            zigZag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigZag >>> 1) ^ -(zigZag & 1);
+            }
+        }
+        throw new IOException("Invalid number in the save!");
+    }
+
+    /**
+     * Read an unsigned int written by {@link #writeVarInt(DataOutput, int)}
+     *
+     * @param input The buffer to read from
+     * @return The value
+     * @throws IOException Thrown, when the number isn't valid
+     */
+    static int readVarInt(ByteBuffer input) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = input.get() & 0xFF;
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Invalid number in the save!");
+    }
+}
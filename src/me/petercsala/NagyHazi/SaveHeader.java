@@ -0,0 +1,271 @@
+package me.petercsala.NagyHazi;
+
+import java.awt.Point;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The fixed size header at the start of every save file
+ * <p>
+ * It holds everything needed to show a save in a list without reading the rest of the file:
+ * the size of the map, the balance, the population, the date and a small picture of the map,
+ * with a byte for every pixel telling what covers that part of the map. It also holds the
+ * happiness sums, so a map can run before its chunks are decoded.
+ */
+public class SaveHeader {
+    /**
+     * The first four bytes of every save file
+     */
+    static final int MAGIC = 0x43425346;
+    /**
+     * The version of the format written
+     */
+    static final int VERSION = 5;
+    /**
+     * The size of the sides of the thumbnail in pixels
+     */
+    public static final int THUMBNAIL_SIZE = 64;
+    /**
+     * The size of the header in bytes
+     */
+    static final int SIZE = 4 + 2 + 4 + 4 + 8 + 8 + 8 + 8 + 4 + 4 + 4 + THUMBNAIL_SIZE * THUMBNAIL_SIZE;
+
+    /**
+     * A thumbnail pixel with nothing on it
+     */
+    public static final byte GROUND = 0;
+    /**
+     * A thumbnail pixel with a road on it
+     */
+    public static final byte ROAD = 1;
+    /**
+     * A thumbnail pixel with a building people live in on it
+     */
+    public static final byte HOUSING = 2;
+    /**
+     * A thumbnail pixel with another building on it
+     */
+    public static final byte BUILDING = 3;
+
+    /**
+     * The size of the saved map
+     */
+    private final Point mapSize;
+    /**
+     * The saved balance
+     */
+    private final long money;
+    /**
+     * The saved population
+     */
+    private final long population;
+    /**
+     * The saved sum of the happiness of every placeable
+     */
+    private final double happinessTotal;
+    /**
+     * The saved sum of the happiness multipliers of every placeable
+     */
+    private final double happinessWeight;
+    /**
+     * The saved game time
+     */
+    private final GameDate gameDate;
+    /**
+     * What covers every pixel of the thumbnail, row by row
+     */
+    private final byte[] thumbnail;
+
+    /**
+     * Constructor, copying the totals of a map to save
+     * <p>
+     * The thumbnail starts out empty, the save draws it when it is written.
+     *
+     * @param map      The map
+     * @param gameDate The game time
+     */
+    public SaveHeader(Map map, GameDate gameDate) {
+        mapSize = new Point(map.getMapSize());
+        money = map.getMoney();
+        population = map.getPopulation();
+        happinessTotal = map.getHappinessTotal();
+        happinessWeight = map.getHappinessWeight();
+        this.gameDate = new GameDate(gameDate.getYear(), gameDate.getMonth(), gameDate.getDay());
+        thumbnail = new byte[THUMBNAIL_SIZE * THUMBNAIL_SIZE];
+    }
+
+    /**
+     * Constructor reading a header
+     *
+     * @param data The buffer to read from, left after the header
+     * @throws IOException Thrown, when the content isn't a valid header
+     */
+    private SaveHeader(ByteBuffer data) throws IOException {
+        try {
+            if (data.getInt() != MAGIC) {
+                throw new IOException("Not a save file!");
+            }
+            int version = data.getShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported save version " + version + "!");
+            }
+            mapSize = new Point(data.getInt(), data.getInt());
+            if (mapSize.x <= 0 || mapSize.y <= 0) {
+                throw new IOException("Invalid map size in the save!");
+            }
+            money = data.getLong();
+            population = data.getLong();
+            happinessTotal = data.getDouble();
+            happinessWeight = data.getDouble();
+            gameDate = new GameDate(data.getInt(), data.getInt(), data.getInt());
+            thumbnail = new byte[THUMBNAIL_SIZE * THUMBNAIL_SIZE];
+            data.get(thumbnail);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("The save file is cut short!", e);
+        }
+    }
+
+    /**
+     * Read a header from a buffer
+     *
+     * @param data The buffer to read from, left after the header
+     * @return The header
+     * @throws IOException Thrown, when the content isn't a valid header
+     */
+    static SaveHeader read(ByteBuffer data) throws IOException {
+        return new SaveHeader(data);
+    }
+
+    /**
+     * Read only the header of a save file
+     *
+     * @param path The path of the file
+     * @return The header
+     * @throws IOException Thrown, when the file can't be read or isn't a valid save
+     */
+    public static SaveHeader read(String path) throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(SIZE);
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            int read;
+            do {
+                read = channel.read(data);
+            } while (read != -1 && data.hasRemaining());
+        }
+        data.flip();
+        return new SaveHeader(data);
+    }
+
+    /**
+     * Write the header
+     *
+     * @param output The stream to write to
+     * @throws IOException Thrown, when the stream can't be written
+     */
+    void write(DataOutput output) throws IOException {
+        output.writeInt(MAGIC);
+        output.writeShort(VERSION);
+        output.writeInt(mapSize.x);
+        output.writeInt(mapSize.y);
+        output.writeLong(money);
+        output.writeLong(population);
+        output.writeDouble(happinessTotal);
+        output.writeDouble(happinessWeight);
+        output.writeInt(gameDate.getYear());
+        output.writeInt(gameDate.getMonth());
+        output.writeInt(gameDate.getDay());
+        output.write(thumbnail);
+    }
+
+    /**
+     * Mark the pixels of the thumbnail covered by an instance
+     *
+     * @param pos  The position of the instance
+     * @param type The type of the instance
+     */
+    void cover(TilePos pos, Placeable type) {
+        Point size = type.getSize();
+        if (pos.x + size.x > mapSize.x || pos.y + size.y > mapSize.y) {
+            return;
+        }
+        byte kind = type.isRoad() ? ROAD : type.getResidents() > 0 ? HOUSING : BUILDING;
+        int minX = pos.x * THUMBNAIL_SIZE / mapSize.x;
+        int minY = pos.y * THUMBNAIL_SIZE / mapSize.y;
+        int maxX = Math.max(minX, (pos.x + size.x) * THUMBNAIL_SIZE / mapSize.x - 1);
+        int maxY = Math.max(minY, (pos.y + size.y) * THUMBNAIL_SIZE / mapSize.y - 1);
+        for (int y = minY; y <= maxY; y++) {
+            for (int x = minX; x <= maxX; x++) {
+                thumbnail[y * THUMBNAIL_SIZE + x] = (byte) Math.max(thumbnail[y * THUMBNAIL_SIZE + x], kind);
+            }
+        }
+    }
+
+    /**
+     * Get the size of the saved map
+     *
+     * @return The size
+     */
+    public Point getMapSize() {
+        return mapSize;
+    }
+
+    /**
+     * Get the saved balance
+     *
+     * @return The balance
+     */
+    public long getMoney() {
+        return money;
+    }
+
+    /**
+     * Get the saved population
+     *
+     * @return The population
+     */
+    public long getPopulation() {
+        return population;
+    }
+
+    /**
+     * Get the saved sum of the happiness of every placeable
+     *
+     * @return The sum
+     */
+    public double getHappinessTotal() {
+        return happinessTotal;
+    }
+
+    /**
+     * Get the saved sum of the happiness multipliers of every placeable
+     *
+     * @return The sum
+     */
+    public double getHappinessWeight() {
+        return happinessWeight;
+    }
+
+    /**
+     * Get the saved game time
+     *
+     * @return The game time
+     */
+    public GameDate getGameDate() {
+        return gameDate;
+    }
+
+    /**
+     * Get what covers a pixel of the thumbnail
+     *
+     * @param x The x position of the pixel
+     * @param y The y position of the pixel
+     * @return One of {@link #GROUND}, {@link #ROAD}, {@link #HOUSING} or {@link #BUILDING}
+     */
+    public byte getThumbnailPixel(int x, int y) {
+        return thumbnail[y * THUMBNAIL_SIZE + x];
+    }
+}
@@ -0,0 +1,245 @@
+package me.petercsala.NagyHazi;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes saves on a background thread, so the game doesn't stop while a save is encoded and written
+ * <p>
+ * Every save is written to a temporary file next to its target first, then moved over it, so a
+ * crash during writing never leaves a half written save behind.
+ * <p>
+ * Autosaves only append the edits since the previous autosave to the log of the current slot.
+ * Every few autosaves, or once the edits would take more space than the whole map, the map is
+ * saved in full into the next slot instead, overwriting the oldest one. The journal of the map is
+ * emptied as soon as an autosave is handed over, so when writing one fails, the next autosave is a
+ * full one as well.
+ */
+public class SaveWriter {
+    /**
+     * The number of deltas appended to a log before the map is saved in full again
+     */
+    static final int MAX_DELTAS = 16;
+
+    /**
+     * The directory of the autosave slots
+     */
+    private final File directory;
+    /**
+     * The number of autosave slots
+     */
+    private final int slots;
+    /**
+     * The slot the next full autosave goes to
+     */
+    private int nextSlot = 0;
+    /**
+     * The slot the last full autosave went to, the deltas are appended to its log
+     */
+    private int currentSlot = -1;
+    /**
+     * The map saved in the current slot, deltas only make sense for the same map
+     */
+    private Map currentMap;
+    /**
+     * The number of deltas appended to the log of the current slot
+     */
+    private int deltaCount = 0;
+    /**
+     * Did writing the last autosave fail? Set by the writing thread, the next autosave is then a full one
+     */
+    private volatile boolean failed = false;
+    /**
+     * The number of saves handed over but not written yet
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+    /**
+     * The thread writing the saves
+     */
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Save writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Constructor
+     *
+     * @param directory The directory of the autosave slots
+     * @param slots     The number of autosave slots
+     */
+    public SaveWriter(File directory, int slots) {
+        if (slots < 1) {
+            throw new RuntimeException("There must be at least one autosave slot!");
+        }
+        this.directory = directory;
+        this.slots = slots;
+    }
+
+    /**
+     * Write a save in the background
+     *
+     * @param save The save to write
+     * @param path The path to write it to
+     */
+    public void save(SaveFile save, String path) {
+        execute(() -> write(save, Paths.get(path)), false);
+    }
+
+    /**
+     * Run a write on the writing thread
+     *
+     * @param write    The write
+     * @param autosave Is it an autosave? A failed autosave makes the next one a full one
+     */
+    private void execute(Write write, boolean autosave) {
+        pending.incrementAndGet();
+        executor.execute(() -> {
+            try {
+                write.run();
+            } catch (IOException | RuntimeException e) {
+                if (autosave) {
+                    failed = true;
+                }
+                e.printStackTrace();
+            } finally {
+                pending.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Autosave a map in the background, unless a save is still being written
+     * <p>
+     * Has to be called from the thread changing the map, the state is copied before returning.
+     * No write is running while this hands one over, so the failure of the previous one is known.
+     *
+     * @param map      The map
+     * @param gameDate The game time
+     * @return If the save was handed over
+     */
+    public boolean autosave(Map map, GameDate gameDate) {
+        if (pending.get() != 0) {
+            return false;
+        }
+        if (failed || map != currentMap || deltaCount >= MAX_DELTAS || map.getJournal().size() > map.getInstanceCount()) {
+            failed = false;
+            map.getJournal().clear();
+            SaveFile save = new SaveFile(map, gameDate);
+            Path path = Paths.get(getSlotPath(nextSlot));
+            execute(() -> write(save, path), true);
+            currentSlot = nextSlot;
+            currentMap = map;
+            deltaCount = 0;
+            nextSlot = (nextSlot + 1) % slots;
+        } else {
+            SaveDelta delta = new SaveDelta(map, gameDate);
+            Path logPath = Paths.get(SaveDelta.getLogPath(getSlotPath(currentSlot)));
+            execute(() -> append(delta, logPath), true);
+            deltaCount++;
+        }
+        return true;
+    }
+
+    /**
+     * Get the path of an autosave slot
+     *
+     * @param slot The index of the slot
+     * @return The path
+     */
+    public String getSlotPath(int slot) {
+        return new File(directory, "autosave" + slot + ".cbs").getPath();
+    }
+
+    /**
+     * Write a save to a temporary file, then move it over the target
+     * <p>
+     * The log of the target is only deleted once the new save is in place, so a failed write
+     * leaves the previous save and its log as they were.
+     *
+     * @param save The save
+     * @param path The path to write it to
+     * @throws IOException Thrown, when the file can't be written
+     */
+    private static void write(SaveFile save, Path path) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temporary = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream output = Files.newOutputStream(temporary)) {
+                save.write(output);
+            }
+            try {
+                Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.deleteIfExists(Paths.get(SaveDelta.getLogPath(path.toString())));
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Append a delta to a log, making sure it reached the disk
+     *
+     * @param delta   The delta
+     * @param logPath The path of the log
+     * @throws IOException Thrown, when the log can't be written
+     */
+    private static void append(SaveDelta delta, Path logPath) throws IOException {
+        try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            delta.write(Channels.newOutputStream(channel));
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Wait for every save handed over to be written
+     */
+    public void flush() {
+        try {
+            executor.submit(() -> { }).get();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Write the remaining saves, then stop the writing thread
+     */
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A write run on the writing thread
+     */
+    private interface Write {
+        /**
+         * Run the write
+         *
+         * @throws IOException Thrown, when the file can't be written
+         */
+        void run() throws IOException;
+    }
+}
@@ -0,0 +1,386 @@
+package me.petercsala.NagyHazi;
+
+import java.awt.*;
+import java.io.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the game on its own thread, advancing it in fixed ticks
+ * <p>
+ * Other threads don't touch the game state directly, they hand over commands that are run
+ * at the start of the next tick, and read the snapshot published at the end of the last one.
+ * The edits of the player and the moves of the view come many times a second, so they are handed
+ * over as plain numbers through a ring buffer, the rare commands like saving go through a queue.
+ */
+public class Simulation implements Runnable {
+    /**
+     * The length of a tick in seconds
+     */
+    static final float TICK_LENGTH = 1 / 60f;
+    /**
+     * The most ticks run to catch up after falling behind, the rest of the lost time is dropped
+     */
+    static final int MAX_CATCH_UP_TICKS = 5;
+    /**
+     * The number of ticks between autosaves
+     */
+    static final int AUTOSAVE_TICKS = 2 * 60 * 60;
+    /**
+     * The number of autosave slots rotated through
+     */
+    static final int AUTOSAVE_SLOTS = 3;
+    /**
+     * The number of inputs that can wait for the next tick
+     */
+    static final int INPUT_CAPACITY = 1024;
+
+    /**
+     * The snapshot of the state at the end of the last tick
+     */
+    private final AtomicReference<FrameSnapshot> snapshot = new AtomicReference<>();
+    /**
+     * The commands waiting for the next tick
+     */
+    private final ConcurrentLinkedQueue<Command> commands = new ConcurrentLinkedQueue<>();
+    /**
+     * The edits and view changes waiting for the next tick, only offered by one thread
+     */
+    private final InputEventRing inputs = new InputEventRing(INPUT_CAPACITY);
+    /**
+     * The handler running the inputs
+     */
+    private final InputEventRing.Handler applyInput = this::applyInput;
+    /**
+     * The tiles the player sees, only these and the chunks around them are copied into the snapshots
+     */
+    private Rectangle view = new Rectangle();
+
+    /**
+     * The game map
+     */
+    private Map map;
+    /**
+     * The current game time
+     */
+    private GameDate gameDate;
+
+    /**
+     * Has anything changed since the last snapshot?
+     */
+    private boolean dirty = false;
+    /**
+     * The writer of the saves
+     */
+    private final SaveWriter saveWriter;
+    /**
+     * The number of ticks since the last autosave
+     */
+    private int ticksSinceAutosave = 0;
+
+    /**
+     * The thread running the simulation, null if it isn't running
+     */
+    private volatile Thread thread;
+
+    /**
+     * Constructor
+     *
+     * @param map The game map
+     */
+    public Simulation(Map map) {
+        this(map, new SaveWriter(new File("autosaves"), AUTOSAVE_SLOTS));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param map        The game map
+     * @param saveWriter The writer of the saves
+     */
+    public Simulation(Map map, SaveWriter saveWriter) {
+        this.saveWriter = saveWriter;
+        setState(map, new GameDate());
+        snapshot.set(new FrameSnapshot(map, gameDate, view, null));
+    }
+
+    /**
+     * Replace the state of the game
+     *
+     * @param map      The game map
+     * @param gameDate The game time
+     */
+    private void setState(Map map, GameDate gameDate) {
+        this.map = map;
+        this.gameDate = gameDate;
+        gameDate.registerEvent(() -> this.map.collectTaxes());
+        gameDate.registerEvent(() -> dirty = true);
+    }
+
+    /**
+     * Start the simulation thread
+     */
+    public void start() {
+        if (thread != null) {
+            throw new RuntimeException("The simulation is already running!");
+        }
+        thread = new Thread(this, "Simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop the simulation thread, waiting for the current tick and the saves to finish
+     */
+    public void stop() {
+        Thread running = thread;
+        if (running == null) {
+            return;
+        }
+        thread = null;
+        LockSupport.unpark(running);
+        try {
+            running.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        saveWriter.flush();
+    }
+
+    /**
+     * The loop of the simulation thread
+     */
+    @Override
+    public void run() {
+        long tickNanos = (long) (TICK_LENGTH * 1e9);
+        long previousTime = System.nanoTime();
+        long behind = 0;
+        while (thread == Thread.currentThread()) {
+            long time = System.nanoTime();
+            behind += time - previousTime;
+            previousTime = time;
+
+            int ticks = 0;
+            while (behind >= tickNanos && ticks < MAX_CATCH_UP_TICKS) {
+                tick();
+                behind -= tickNanos;
+                ticks++;
+            }
+            if (behind >= tickNanos) {
+                behind = 0;
+            }
+
+            LockSupport.parkNanos(tickNanos - behind);
+        }
+    }
+
+    /**
+     * Run the waiting inputs and commands, advance the game by a tick, then publish the new state
+     * if it changed and autosave if it's time
+     * <p>
+     * The state only changes through the commands and on day changes, so on other ticks the
+     * previous snapshot stays, and readers can tell nothing changed by it being the same object.
+     */
+    void tick() {
+        inputs.drain(applyInput);
+        Command command;
+        while ((command = commands.poll()) != null) {
+            dirty = true;
+            try {
+                command.run(this);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        gameDate.advance(TICK_LENGTH);
+        if (dirty) {
+            snapshot.set(new FrameSnapshot(map, gameDate, view, snapshot.get()));
+            dirty = false;
+        }
+        ticksSinceAutosave++;
+        if (ticksSinceAutosave >= AUTOSAVE_TICKS && !map.isBatching()
+                && saveWriter.autosave(map, gameDate)) {
+            ticksSinceAutosave = 0;
+        }
+    }
+
+    /**
+     * Run an input of the player, opening a batch for the edits until they are committed
+     * <p>
+     * Only inputs that change something mark the state as changed, so a refused placement or
+     * a repeated view doesn't cost a new snapshot.
+     *
+     * @param time The time of the input, in {@link System#nanoTime()}
+     * @param type The type of the input
+     * @param code The code of the input
+     * @param x    The x value of the input
+     * @param y    The y value of the input
+     */
+    private void applyInput(long time, int type, int code, int x, int y) {
+        if (type == InputEventRing.VIEW) {
+            Rectangle tiles = new Rectangle(x, y, code >>> 16, code & 0xFFFF);
+            if (!tiles.equals(view)) {
+                view = tiles;
+                dirty = true;
+            }
+            return;
+        }
+        if (type == InputEventRing.COMMIT) {
+            if (map.isBatching()) {
+                map.commitBatch();
+                dirty = true;
+            }
+            return;
+        }
+        TilePos pos = new TilePos(x, y);
+        Placeable placeable = type == InputEventRing.PLACE ? Catalog.get(code) : null;
+        if (placeable == null ? map.getInstanceId(x, y) == 0 : !map.canPlace(placeable, pos)) {
+            return;
+        }
+        if (!map.isBatching()) {
+            map.beginBatch();
+        }
+        if (placeable != null) {
+            map.place(placeable, pos);
+        } else {
+            map.remove(pos);
+        }
+        dirty = true;
+    }
+
+    /**
+     * Hand over a command to be run at the start of the next tick
+     *
+     * @param command The command
+     */
+    public void submit(Command command) {
+        commands.add(command);
+    }
+
+    /**
+     * Hand over placing a placeable, only ever from the same thread
+     *
+     * @param time        The time of the input event behind the edit, in {@link System#nanoTime()}
+     * @param placeableId The index of the placeable in the {@link Catalog}
+     * @param pos         The tile to place it on
+     * @return If the edit was handed over, false if too many edits are waiting
+     */
+    public boolean submitPlace(long time, int placeableId, TilePos pos) {
+        return inputs.offer(time, InputEventRing.PLACE, placeableId, pos.x, pos.y);
+    }
+
+    /**
+     * Hand over removing a placeable, only ever from the same thread
+     *
+     * @param time The time of the input event behind the edit, in {@link System#nanoTime()}
+     * @param pos  The tile to remove the placeable from
+     * @return If the edit was handed over, false if too many edits are waiting
+     */
+    public boolean submitRemove(long time, TilePos pos) {
+        return inputs.offer(time, InputEventRing.REMOVE, 0, pos.x, pos.y);
+    }
+
+    /**
+     * Hand over committing the edits so far, only ever from the same thread
+     *
+     * @param time The time of the input event ending the edits, in {@link System#nanoTime()}
+     * @return If the commit was handed over, false if too many edits are waiting
+     */
+    public boolean submitCommit(long time) {
+        return inputs.offer(time, InputEventRing.COMMIT, 0, 0, 0);
+    }
+
+    /**
+     * Hand over the tiles the player sees, only ever from the same thread as the edits
+     *
+     * @param tiles The tiles in view
+     * @return If the view was handed over, false if too many inputs are waiting
+     */
+    public boolean submitView(Rectangle tiles) {
+        int width = Math.min(tiles.width, 0xFFFF);
+        int height = Math.min(tiles.height, 0xFFFF);
+        return inputs.offer(System.nanoTime(), InputEventRing.VIEW, width << 16 | height, tiles.x, tiles.y);
+    }
+
+    /**
+     * Get the snapshot of the state at the end of the last tick, from any thread
+     *
+     * @return The snapshot
+     */
+    public FrameSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * Get the game map, only from the commands
+     *
+     * @return The map
+     */
+    public Map getMap() {
+        return map;
+    }
+
+    /**
+     * Get the game time, only from the commands
+     *
+     * @return The game time
+     */
+    public GameDate getGameDate() {
+        return gameDate;
+    }
+
+    /**
+     * Save the game, copying the state now and writing it in the background
+     *
+     * @param path The path to save the game at
+     */
+    void save(String path) {
+        if (map.isBatching()) {
+            map.commitBatch();
+        }
+        saveWriter.save(new SaveFile(map, gameDate), path);
+    }
+
+    /**
+     * Load the game
+     *
+     * @param path The path to load the game from
+     */
+    void load(String path) {
+        try {
+            SaveFile save = SaveFile.open(path);
+            Map loadedMap = save.getMap();
+            GameDate loadedDate = save.getGameDate();
+            if (new File(SaveDelta.getLogPath(path)).exists()) {
+                GameDate replayedDate = SaveDelta.replay(loadedMap, SaveDelta.getLogPath(path));
+                if (replayedDate != null) {
+                    loadedDate = replayedDate;
+                }
+            }
+            setState(loadedMap, loadedDate);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Start a new game on the same map
+     */
+    void reset() {
+        map.reset();
+        setState(map, new GameDate());
+    }
+
+    /**
+     * A change to the game, run on the simulation thread
+     */
+    public interface Command {
+        /**
+         * Run the command
+         *
+         * @param simulation The simulation to change
+         */
+        void run(Simulation simulation);
+    }
+}
@@ -0,0 +1,130 @@
+package me.petercsala.NagyHazi;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A uniform grid of buckets holding the placeables of a map by their center
+ */
+public class SpatialIndex {
+    /**
+     * The size of a bucket in tiles
+     */
+    static final int BUCKET_SIZE = 16;
+
+    /**
+     * The number of buckets in a row
+     */
+    private final int width;
+    /**
+     * The number of buckets in a column
+     */
+    private final int height;
+    /**
+     * The buckets, created on first use
+     */
+    private final List<List<Placeable>> buckets;
+
+    /**
+     * Constructor
+     *
+     * @param mapSize The size of the map in tiles
+     */
+    public SpatialIndex(Point mapSize) {
+        width = (mapSize.x + BUCKET_SIZE - 1) / BUCKET_SIZE;
+        height = (mapSize.y + BUCKET_SIZE - 1) / BUCKET_SIZE;
+        buckets = new ArrayList<>(width * height);
+        for (int i = 0; i < width * height; i++) {
+            buckets.add(null);
+        }
+    }
+
+    /**
+     * Add a placeable to the index
+     *
+     * @param placeable The placeable
+     */
+    public void add(Placeable placeable) {
+        int index = getBucketIndex(placeable.getCenter());
+        if (buckets.get(index) == null) {
+            buckets.set(index, new ArrayList<>());
+        }
+        buckets.get(index).add(placeable);
+    }
+
+    /**
+     * Remove a placeable from the index
+     *
+     * @param placeable The placeable
+     */
+    public void remove(Placeable placeable) {
+        List<Placeable> bucket = buckets.get(getBucketIndex(placeable.getCenter()));
+        for (int i = 0; i < bucket.size(); i++) {
+            if (bucket.get(i) == placeable) {
+                bucket.set(i, bucket.get(bucket.size() - 1));
+                bucket.remove(bucket.size() - 1);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Remove every placeable from the index
+     */
+    public void clear() {
+        for (int i = 0; i < buckets.size(); i++) {
+            buckets.set(i, null);
+        }
+    }
+
+    /**
+     * Get the placeables with their center in the given distance from a point
+     *
+     * @param center The point in world space
+     * @param radius The distance in world space
+     * @return The placeables
+     */
+    public List<Placeable> query(Point center, double radius) {
+        List<Placeable> found = new ArrayList<>();
+        int bucketPixels = BUCKET_SIZE * 16;
+        int minX = 0;
+        int minY = 0;
+        int maxX = width - 1;
+        int maxY = height - 1;
+        if (!Double.isInfinite(radius)) {
+            minX = Math.max(minX, (int) Math.floor((center.x - radius) / bucketPixels));
+            minY = Math.max(minY, (int) Math.floor((center.y - radius) / bucketPixels));
+            maxX = Math.min(maxX, (int) Math.floor((center.x + radius) / bucketPixels));
+            maxY = Math.min(maxY, (int) Math.floor((center.y + radius) / bucketPixels));
+        }
+
+        double radiusSquared = radius * radius;
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                List<Placeable> bucket = buckets.get(x * height + y);
+                if (bucket == null) {
+                    continue;
+                }
+                for (Placeable placeable : bucket) {
+                    if (placeable.getCenter().distanceSq(center) <= radiusSquared) {
+                        found.add(placeable);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Get the index of the bucket holding a point
+     *
+     * @param pos The point in world space
+     * @return The index of the bucket
+     */
+    private int getBucketIndex(Point pos) {
+        int x = Math.min(width - 1, pos.x / 16 / BUCKET_SIZE);
+        int y = Math.min(height - 1, pos.y / 16 / BUCKET_SIZE);
+        return x * height + y;
+    }
+}
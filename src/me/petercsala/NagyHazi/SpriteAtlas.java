@@ -0,0 +1,237 @@
+package me.petercsala.NagyHazi;
+
+import javafx.geometry.Rectangle2D;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.WritableImage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Packs the sprites of the placeables into a few large images
+ * <p>
+ * Every sprite file is read once, and files with the same content are only stored once, so
+ * drawing anything is a single draw call from one of the pages.
+ */
+public class SpriteAtlas {
+    /**
+     * The size of the sides of a page
+     */
+    private static final int PAGE_SIZE = 1024;
+
+    /**
+     * The pages the sprites are packed into
+     */
+    private final List<WritableImage> pages = new ArrayList<>();
+    /**
+     * The packed sprites by their path
+     */
+    private final HashMap<String, Sprite> sprites = new HashMap<>();
+
+    /**
+     * Pack the sprites of every placeable
+     *
+     * @param placeables The placeables
+     */
+    public void build(List<Placeable> placeables) {
+        HashMap<String, String> contentOfPath = new HashMap<>();
+        HashMap<String, Image> images = new HashMap<>();
+        for (Placeable placeable : placeables) {
+            String path = placeable.getSpritePath();
+            if (contentOfPath.containsKey(path)) {
+                continue;
+            }
+            byte[] bytes = readSprite(path);
+            String content = hash(bytes);
+            contentOfPath.put(path, content);
+            if (!images.containsKey(content)) {
+                Image image = new Image(new ByteArrayInputStream(bytes));
+                if (image.isError()) {
+                    throw new RuntimeException("Couldn't decode sprite " + path + "!");
+                }
+                images.put(content, image);
+            }
+        }
+
+        List<String> contents = new ArrayList<>(images.keySet());
+        contents.sort(Comparator.comparingDouble((String content) -> -images.get(content).getHeight())
+                .thenComparing(content -> content));
+        AtlasPacker packer = new AtlasPacker(PAGE_SIZE);
+        HashMap<String, AtlasPacker.Region> regions = new HashMap<>();
+        for (String content : contents) {
+            Image image = images.get(content);
+            regions.put(content, packer.pack((int) image.getWidth(), (int) image.getHeight()));
+        }
+
+        pages.clear();
+        for (int i = 0; i < packer.getPageCount(); i++) {
+            pages.add(new WritableImage(PAGE_SIZE, Math.max(1, packer.getPageHeight(i))));
+        }
+        for (String content : contents) {
+            Image image = images.get(content);
+            AtlasPacker.Region region = regions.get(content);
+            pages.get(region.page).getPixelWriter().setPixels(region.x, region.y, region.width, region.height,
+                    image.getPixelReader(), 0, 0);
+        }
+
+        sprites.clear();
+        for (Placeable placeable : placeables) {
+            String path = placeable.getSpritePath();
+            Sprite sprite = sprites.get(path);
+            if (sprite == null) {
+                AtlasPacker.Region region = regions.get(contentOfPath.get(path));
+                sprite = new Sprite(pages.get(region.page), region);
+                sprites.put(path, sprite);
+            }
+            if (placeable.isRoad()) {
+                sprite.addRoadVariants();
+            }
+        }
+    }
+
+    /**
+     * Read the content of a sprite file
+     *
+     * @param spritePath The path of the sprite, relative to the user resources
+     * @return The content of the file
+     */
+    private static byte[] readSprite(String spritePath) {
+        URL url = SpriteAtlas.class.getClassLoader().getResource("userResources/" + spritePath);
+        if (url == null) {
+            throw new RuntimeException("Couldn't find sprite " + spritePath + "!");
+        }
+        try (InputStream input = url.openStream()) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+            return output.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException("Couldn't read sprite " + spritePath + "!", e);
+        }
+    }
+
+    /**
+     * Hash the content of a file
+     *
+     * @param bytes The content
+     * @return The hash as a string
+     */
+    private static String hash(byte[] bytes) {
+        try {
+            return new BigInteger(1, MessageDigest.getInstance("SHA-256").digest(bytes)).toString(16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Get a packed sprite
+     *
+     * @param spritePath The path of the sprite, relative to the user resources
+     * @return The sprite
+     */
+    private Sprite get(String spritePath) {
+        Sprite sprite = sprites.get(spritePath);
+        if (sprite == null) {
+            throw new RuntimeException("The sprite " + spritePath + " isn't in the atlas!");
+        }
+        return sprite;
+    }
+
+    /**
+     * Draw a sprite
+     *
+     * @param ctx        The graphics context
+     * @param spritePath The path of the sprite, relative to the user resources
+     * @param bitMask    The road variant to draw, -1 to draw the whole sprite
+     * @param x          The x position to draw it at
+     * @param y          The y position to draw it at
+     */
+    public void draw(GraphicsContext ctx, String spritePath, int bitMask, double x, double y) {
+        Sprite sprite = get(spritePath);
+        if (bitMask >= 0) {
+            ctx.drawImage(sprite.page, sprite.variantX[bitMask], sprite.variantY[bitMask], 16, 16, x, y, 16, 16);
+        } else {
+            ctx.drawImage(sprite.page, sprite.region.x, sprite.region.y, sprite.region.width, sprite.region.height,
+                    x, y, sprite.region.width, sprite.region.height);
+        }
+    }
+
+    /**
+     * Get a view showing a sprite
+     *
+     * @param spritePath The path of the sprite, relative to the user resources
+     * @param bitMask    The road variant to show, -1 to show the whole sprite
+     * @return The view
+     */
+    public ImageView getView(String spritePath, int bitMask) {
+        Sprite sprite = get(spritePath);
+        ImageView imageView = new ImageView(sprite.page);
+        if (bitMask >= 0) {
+            imageView.setViewport(new Rectangle2D(sprite.variantX[bitMask], sprite.variantY[bitMask], 16, 16));
+        } else {
+            imageView.setViewport(new Rectangle2D(sprite.region.x, sprite.region.y, sprite.region.width, sprite.region.height));
+        }
+        return imageView;
+    }
+
+    /**
+     * A sprite packed into a page
+     */
+    private static class Sprite {
+        /**
+         * The page the sprite is in
+         */
+        private final Image page;
+        /**
+         * The place of the sprite in the page
+         */
+        private final AtlasPacker.Region region;
+        /**
+         * The x position of every road variant in the page, null if it isn't used by a road
+         */
+        private int[] variantX;
+        /**
+         * The y position of every road variant in the page, null if it isn't used by a road
+         */
+        private int[] variantY;
+
+        /**
+         * Constructor
+         *
+         * @param page   The page the sprite is in
+         * @param region The place of the sprite in the page
+         */
+        private Sprite(Image page, AtlasPacker.Region region) {
+            this.page = page;
+            this.region = region;
+        }
+
+        /**
+         * Work out where the 16 road variants are, laid out 4 by 4 by their bitmask
+         */
+        private void addRoadVariants() {
+            if (variantX != null) {
+                return;
+            }
+            variantX = new int[16];
+            variantY = new int[16];
+            for (int bitMask = 0; bitMask < 16; bitMask++) {
+                variantX[bitMask] = region.x + (bitMask % 4) * 16;
+                variantY[bitMask] = region.y + (bitMask / 4) * 16;
+            }
+        }
+    }
+}
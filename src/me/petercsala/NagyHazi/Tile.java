@@ -1,22 +1,42 @@
 package me.petercsala.NagyHazi;
 
 import java.awt.*;
-import java.io.Serializable;
 
 /**
  * Represents a tile on the map
+ * <p>
+ * The tile doesn't hold any state itself, it is a view of the cell it was created for.
  */
-public class Tile implements Serializable {
+public class Tile {
+    /**
+     * The map the tile is in
+     */
+    private final Map map;
+    /**
+     * The x position of the tile
+     */
+    private final int x;
+    /**
+     * The y position of the tile
+     */
+    private final int y;
     /**
      * The placeable on the tile
      */
-    private Placeable placeable;
+    private final Placeable placeable;
 
     /**
      * Constructor
+     *
+     * @param map The map the tile is in
+     * @param x   The x position of the tile
+     * @param y   The y position of the tile
      */
-    public Tile() {
-        placeable = null;
+    public Tile(Map map, int x, int y) {
+        this.map = map;
+        this.x = x;
+        this.y = y;
+        placeable = map.getInstance(map.getInstanceId(x, y));
     }
 
     /**
@@ -37,15 +57,6 @@ public class Tile implements Serializable {
         return placeable == null;
     }
 
-    /**
-     * Place a placeable on the tile
-     *
-     * @param placeable The placeable to place
-     */
-    public void place(Placeable placeable) {
-        this.placeable = placeable;
-    }
-
     /**
      * Update the tile
      *
@@ -134,17 +145,14 @@ public class Tile implements Serializable {
      * @return Is it a road
      */
     public boolean isRoad() {
-        if (placeable == null) {
-            return false;
-        }
-        return placeable.isRoad();
+        return map.isRoad(x, y);
     }
 }
 
 /**
  * Represents a tile position
  */
-class TilePos implements Serializable {
+class TilePos {
     /**
      * The x position
      */
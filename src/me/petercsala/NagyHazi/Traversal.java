@@ -0,0 +1,292 @@
+package me.petercsala.NagyHazi;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Reusable scratch space for walking the cells and instances of a map without allocating
+ * <p>
+ * Cells are passed around packed into a single int, see {@link Map#pack(int, int)}. Visited
+ * instances are marked with the number of the current walk, so starting a new walk doesn't
+ * have to clear anything. The water and waste supplies pooled for the networks are kept here
+ * as well, and reused from one solve to the next.
+ */
+public class Traversal {
+    /**
+     * The x offsets of the direct neighbours of a cell, in the order the road bitmask uses them
+     */
+    static final int[] DX = {0, -1, 0, 1};
+    /**
+     * The y offsets of the direct neighbours of a cell, in the order the road bitmask uses them
+     */
+    static final int[] DY = {-1, 0, 1, 0};
+
+    /**
+     * The map being walked
+     */
+    private final Map map;
+    /**
+     * The queue of the walk
+     */
+    private final IntQueue queue = new IntQueue(64);
+    /**
+     * The number of the walk each instance was last visited in, by instance id
+     */
+    private int[] stamps = new int[64];
+    /**
+     * The number of the current walk
+     */
+    private int generation = 0;
+    /**
+     * The cells loaded around a placeable
+     */
+    private int[] cells = new int[16];
+    /**
+     * The buildings collected by the last walk through the networks
+     */
+    private final List<Placeable> found = new ArrayList<>();
+    /**
+     * Orders placeables the way the map is traversed
+     */
+    private final Comparator<Placeable> mapOrder;
+
+    /**
+     * The supplies of the current solve, followed by the unused ones
+     */
+    private final List<Supply> supplies = new ArrayList<>();
+    /**
+     * The number of supplies in use
+     */
+    private int supplyCount = 0;
+    /**
+     * The index of the supply of every network plus one, by the instance id of its root road, 0 for none
+     */
+    private int[] supplyIndices = new int[64];
+    /**
+     * The network key and the index of every supply in use packed together, sorted by {@link #sortSupplies()}
+     */
+    private long[] supplyOrder = new long[16];
+
+    /**
+     * Constructor
+     *
+     * @param map The map to walk
+     */
+    public Traversal(Map map) {
+        this.map = map;
+        mapOrder = Comparator.comparingLong(placeable -> map.getOrderKey(placeable.getActualPos()));
+    }
+
+    /**
+     * Start a new walk, forgetting every visited instance
+     */
+    public void start() {
+        queue.clear();
+        generation++;
+        if (generation == Integer.MAX_VALUE) {
+            stamps = new int[stamps.length];
+            generation = 1;
+        }
+    }
+
+    /**
+     * Get the queue of the walk
+     *
+     * @return The queue
+     */
+    public IntQueue getQueue() {
+        return queue;
+    }
+
+    /**
+     * Mark an instance visited
+     *
+     * @param id The instance id
+     * @return If the instance wasn't visited yet
+     */
+    public boolean visit(int id) {
+        if (id >= stamps.length) {
+            int[] grown = new int[Math.max(id + 1, stamps.length * 2)];
+            System.arraycopy(stamps, 0, grown, 0, stamps.length);
+            stamps = grown;
+        }
+        if (stamps[id] == generation) {
+            return false;
+        }
+        stamps[id] = generation;
+        return true;
+    }
+
+    /**
+     * Get the list collecting the buildings of a walk, emptied by the walk filling it
+     *
+     * @return The list
+     */
+    public List<Placeable> getFound() {
+        return found;
+    }
+
+    /**
+     * Sort the collected buildings the way the map is traversed
+     */
+    public void sortFound() {
+        found.sort(mapOrder);
+    }
+
+    /**
+     * Forget the supplies of the previous solve, keeping them for reuse
+     */
+    public void clearSupplies() {
+        for (int i = 0; i < supplyCount; i++) {
+            supplyIndices[supplies.get(i).network] = 0;
+        }
+        supplyCount = 0;
+    }
+
+    /**
+     * Get the supply of a network, starting an empty one the first time it is asked for
+     *
+     * @param network The root road of the network
+     * @return The supply
+     */
+    public Supply getSupply(Road network) {
+        int id = network.placedIndex + 1;
+        if (id >= supplyIndices.length) {
+            supplyIndices = Arrays.copyOf(supplyIndices, Math.max(id + 1, supplyIndices.length * 2));
+        }
+        if (supplyIndices[id] != 0) {
+            return supplies.get(supplyIndices[id] - 1);
+        }
+        if (supplyCount == supplies.size()) {
+            supplies.add(new Supply());
+        }
+        Supply supply = supplies.get(supplyCount);
+        supply.reset(id, network.networkKey);
+        supplyCount++;
+        supplyIndices[id] = supplyCount;
+        return supply;
+    }
+
+    /**
+     * Sort the supplies in use by the map order of their networks
+     * <p>
+     * The keys of the networks are map order keys of roads, so they fit into the upper half of a long.
+     *
+     * @return The number of supplies, see {@link #getSortedSupply(int)}
+     */
+    public int sortSupplies() {
+        if (supplyOrder.length < supplyCount) {
+            supplyOrder = new long[Math.max(supplyCount, supplyOrder.length * 2)];
+        }
+        for (int i = 0; i < supplyCount; i++) {
+            supplyOrder[i] = supplies.get(i).key << 32 | i;
+        }
+        Arrays.sort(supplyOrder, 0, supplyCount);
+        return supplyCount;
+    }
+
+    /**
+     * Get a supply in the order of {@link #sortSupplies()}
+     *
+     * @param index The position of the supply in the order
+     * @return The supply
+     */
+    public Supply getSortedSupply(int index) {
+        return supplies.get((int) supplyOrder[index]);
+    }
+
+    /**
+     * Load the cells directly bordering a placeable
+     *
+     * @param placeable The placeable
+     * @return The number of cells loaded, see {@link #getCell(int)}
+     */
+    public int loadBorder(Placeable placeable) {
+        TilePos pos = placeable.getActualPos();
+        Point size = placeable.getSize();
+        int count = 0;
+        for (int i = 0; i < size.x; i++) {
+            count = load(count, pos.x + i, pos.y - 1);
+            count = load(count, pos.x + i, pos.y + size.y);
+        }
+        for (int i = 0; i < size.y; i++) {
+            count = load(count, pos.x - 1, pos.y + i);
+            count = load(count, pos.x + size.x, pos.y + i);
+        }
+        return count;
+    }
+
+    /**
+     * Get a loaded cell
+     *
+     * @param index The index of the cell
+     * @return The packed position of the cell
+     */
+    public int getCell(int index) {
+        return cells[index];
+    }
+
+    /**
+     * Load a cell if it is inside the map
+     *
+     * @param count The number of cells loaded so far
+     * @param x     The x position of the cell
+     * @param y     The y position of the cell
+     * @return The new number of cells loaded
+     */
+    private int load(int count, int x, int y) {
+        if (x < 0 || x >= map.getMapSize().x || y < 0 || y >= map.getMapSize().y) {
+            return count;
+        }
+        if (count == cells.length) {
+            int[] grown = new int[cells.length * 2];
+            System.arraycopy(cells, 0, grown, 0, cells.length);
+            cells = grown;
+        }
+        cells[count] = map.pack(x, y);
+        return count + 1;
+    }
+
+    /**
+     * The water and waste capacity pooled for a network
+     */
+    static class Supply {
+        /**
+         * The instance id of the root road of the network
+         */
+        int network;
+        /**
+         * The smallest map order key of the network
+         */
+        long key;
+        /**
+         * The water available
+         */
+        long water;
+        /**
+         * The waste capacity available, negative like the production of waste handlers
+         */
+        long waste;
+        /**
+         * The roads to walk from, starting with the ones next to the producers
+         */
+        final IntQueue toVisit = new IntQueue(16);
+
+        /**
+         * Empty the supply for another network
+         *
+         * @param network The instance id of the root road of the network
+         * @param key     The smallest map order key of the network
+         */
+        void reset(int network, long key) {
+            this.network = network;
+            this.key = key;
+            water = 0;
+            waste = 0;
+            toVisit.clear();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package me.petercsala.NagyHazi;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AtlasPackerTest {
+    AtlasPacker packer;
+
+    @Before
+    public void setUp() {
+        packer = new AtlasPacker(64);
+    }
+
+    @Test
+    public void packShelves() {
+        AtlasPacker.Region a = packer.pack(32, 32);
+        AtlasPacker.Region b = packer.pack(32, 16);
+        AtlasPacker.Region c = packer.pack(16, 16);
+        Assert.assertEquals(0, a.x);
+        Assert.assertEquals(32, b.x);
+        Assert.assertEquals(0, b.y);
+        Assert.assertEquals(0, c.x);
+        Assert.assertEquals(32, c.y);
+        Assert.assertEquals(1, packer.getPageCount());
+        Assert.assertEquals(48, packer.getPageHeight(0));
+    }
+
+    @Test
+    public void newPage() {
+        packer.pack(64, 48);
+        AtlasPacker.Region region = packer.pack(16, 32);
+        Assert.assertEquals(1, region.page);
+        Assert.assertEquals(0, region.y);
+        Assert.assertEquals(2, packer.getPageCount());
+        Assert.assertEquals(32, packer.getPageHeight(1));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void tooLarge() {
+        packer.pack(65, 16);
+    }
+}
@@ -0,0 +1,37 @@
+package me.petercsala.NagyHazi;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChunkTest {
+    Chunk chunk;
+
+    @Before
+    public void setUp() {
+        chunk = new Chunk();
+    }
+
+    @Test
+    public void set() {
+        chunk.set(3, 5, 7, false);
+        chunk.set(31, 31, 8, true);
+        Assert.assertEquals(7, chunk.getId(3, 5));
+        Assert.assertEquals(8, chunk.getId(31, 31));
+        Assert.assertEquals(0, chunk.getId(5, 3));
+        Assert.assertFalse(chunk.isRoad(3, 5));
+        Assert.assertTrue(chunk.isRoad(31, 31));
+        Assert.assertFalse(chunk.isRoad(30, 31));
+    }
+
+    @Test
+    public void isEmpty() {
+        Assert.assertTrue(chunk.isEmpty());
+        chunk.set(0, 0, 1, true);
+        chunk.set(0, 0, 2, false);
+        Assert.assertFalse(chunk.isEmpty());
+        Assert.assertFalse(chunk.isRoad(0, 0));
+        chunk.set(0, 0, 0, false);
+        Assert.assertTrue(chunk.isEmpty());
+    }
+}
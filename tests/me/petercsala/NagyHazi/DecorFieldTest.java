@@ -0,0 +1,58 @@
+package me.petercsala.NagyHazi;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.*;
+
+public class DecorFieldTest {
+    DecorField field;
+    Building park;
+
+    @Before
+    public void setUp() {
+        field = new DecorField(new Point(100, 100));
+        park = new Building();
+        park.name = "Park";
+        park.size = new Point(2, 2);
+        park.decorProvided = 1000;
+    }
+
+    @Test
+    public void kernelMatchesGaussian() {
+        Placeable placed = park.clone(new TilePos(50, 50));
+        field.add(placed);
+        Point center = placed.getCenter();
+        for (int dx = -200; dx <= 200; dx += 8) {
+            for (int dy = -200; dy <= 200; dy += 8) {
+                Point pos = new Point(center.x + dx, center.y + dy);
+                Assert.assertEquals(placed.getProvidedDecorAt(pos), field.get(pos));
+                Assert.assertEquals(placed.getProvidedDecorAt(pos), field.getProvided(placed, pos));
+            }
+        }
+    }
+
+    @Test
+    public void removeFreesBlocks() {
+        Placeable first = park.clone(new TilePos(31, 31));
+        Placeable second = park.clone(new TilePos(33, 31));
+        field.add(first);
+        field.add(second);
+        Assert.assertEquals(4, field.getBlockCount());
+
+        field.remove(first);
+        Assert.assertEquals(second.getProvidedDecorAt(first.getCenter()), field.get(first.getCenter()));
+        field.remove(second);
+        Assert.assertEquals(0, field.getBlockCount());
+    }
+
+    @Test
+    public void edgeOfMap() {
+        Placeable placed = park.clone(new TilePos(0, 0));
+        field.add(placed);
+        Assert.assertEquals(1000, field.get(placed.getCenter()));
+        field.remove(placed);
+        Assert.assertEquals(0, field.getBlockCount());
+    }
+}
@@ -0,0 +1,87 @@
+package me.petercsala.NagyHazi;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.*;
+import java.util.Collections;
+
+public class FrameSnapshotTest {
+    Map map;
+    Building building;
+
+    @Before
+    public void setUp() {
+        map = new Map(100, 70);
+        building = new Building();
+        building.size = new Point(2, 3);
+        building.cost = 100;
+        Catalog.set(Collections.singletonList(building));
+    }
+
+    @Test
+    public void groupedByChunk() {
+        map.place(building, new TilePos(70, 40));
+        map.place(building, new TilePos(1, 1));
+        map.place(building, new TilePos(40, 2));
+        map.place(building, new TilePos(5, 1));
+        FrameSnapshot frame = new FrameSnapshot(map, new GameDate(), new Rectangle(0, 0, 100, 70), null);
+
+        Assert.assertEquals(4, frame.getChunksX());
+        Assert.assertEquals(3, frame.getChunksY());
+        Assert.assertEquals(2, frame.getSlice(0, 0).getCount());
+        Assert.assertEquals(1, frame.getSlice(0, 0).getX(0));
+        Assert.assertEquals(5, frame.getSlice(0, 0).getX(1));
+        Assert.assertEquals(1, frame.getSlice(1, 0).getCount());
+        Assert.assertEquals(40, frame.getSlice(1, 0).getX(0));
+        Assert.assertEquals(1, frame.getSlice(2, 1).getCount());
+        Assert.assertEquals(70, frame.getSlice(2, 1).getX(0));
+        Assert.assertEquals(3, frame.getSlice(2, 1).getHeight(0));
+        Assert.assertEquals(0, frame.getSlice(3, 2).getCount());
+        Assert.assertEquals(2, frame.getMaxWidth());
+        Assert.assertEquals(3, frame.getMaxHeight());
+    }
+
+    @Test
+    public void unchangedSlicesAreShared() {
+        map.place(building, new TilePos(1, 1));
+        map.place(building, new TilePos(70, 40));
+        Rectangle view = new Rectangle(0, 0, 100, 70);
+        FrameSnapshot first = new FrameSnapshot(map, new GameDate(), view, null);
+        map.place(building, new TilePos(75, 40));
+        FrameSnapshot second = new FrameSnapshot(map, new GameDate(), view, first);
+
+        Assert.assertSame(first.getSlice(0, 0), second.getSlice(0, 0));
+        Assert.assertNotSame(first.getSlice(2, 1), second.getSlice(2, 1));
+        Assert.assertEquals(1, first.getSlice(2, 1).getCount());
+        Assert.assertEquals(2, second.getSlice(2, 1).getCount());
+    }
+
+    @Test
+    public void onlyChunksAroundViewCopied() {
+        map = new Map(320, 320);
+        FrameSnapshot frame = new FrameSnapshot(map, new GameDate(), new Rectangle(100, 130, 20, 20), null);
+
+        Assert.assertNull(frame.getSlice(0, 2));
+        Assert.assertNull(frame.getSlice(1, 1));
+        Assert.assertNotNull(frame.getSlice(1, 2));
+        Assert.assertNotNull(frame.getSlice(4, 5));
+        Assert.assertNull(frame.getSlice(5, 5));
+        Assert.assertNull(frame.getSlice(4, 6));
+    }
+
+    @Test
+    public void largePlaceablesReachingIntoViewCopied() {
+        map = new Map(320, 320);
+        building.size = new Point(70, 3);
+        Catalog.set(Collections.singletonList(building));
+        map.place(building, new TilePos(32, 0));
+        FrameSnapshot frame = new FrameSnapshot(map, new GameDate(), new Rectangle(96, 0, 10, 10), null);
+
+        Assert.assertEquals(1, frame.getSlice(1, 0).getCount());
+        Assert.assertEquals(70, frame.getMaxWidth());
+        Assert.assertEquals(new Point(3, 1), FrameSnapshot.getReach(new Point(70, 33)));
+        Assert.assertEquals(new Point(0, 1), FrameSnapshot.getReach(new Point(1, 2)));
+    }
+}
@@ -0,0 +1,69 @@
+package me.petercsala.NagyHazi;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class InputEventRingTest {
+    InputEventRing ring;
+
+    @Before
+    public void setUp() {
+        ring = new InputEventRing(4);
+    }
+
+    @Test
+    public void drainInOrder() {
+        Assert.assertTrue(ring.offer(1, InputEventRing.PLACE, 7, 0, 0));
+        Assert.assertTrue(ring.offer(2, InputEventRing.REMOVE, 0, 10, 20));
+
+        List<String> events = new ArrayList<>();
+        Assert.assertEquals(2, ring.drain((time, type, code, x, y) -> events.add(time + " " + type + " " + code + " " + x + " " + y)));
+        Assert.assertEquals("1 0 7 0 0", events.get(0));
+        Assert.assertEquals("2 1 0 10 20", events.get(1));
+        Assert.assertEquals(0, ring.drain((time, type, code, x, y) -> Assert.fail()));
+    }
+
+    @Test
+    public void full() {
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(ring.offer(i, InputEventRing.PLACE, i, 0, 0));
+        }
+        Assert.assertFalse(ring.offer(4, InputEventRing.PLACE, 4, 0, 0));
+        ring.drain((time, type, code, x, y) -> {
+        });
+        Assert.assertTrue(ring.offer(4, InputEventRing.PLACE, 4, 0, 0));
+    }
+
+    @Test
+    public void acrossThreads() throws InterruptedException {
+        ring = new InputEventRing(64);
+        int count = 200000;
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < count; i++) {
+                while (!ring.offer(i, InputEventRing.REMOVE, 0, i, -i)) {
+                    Thread.yield();
+                }
+            }
+        });
+        producer.setDaemon(true);
+        producer.start();
+
+        long[] next = {0};
+        while (next[0] < count) {
+            int drained = ring.drain((time, type, code, x, y) -> {
+                Assert.assertEquals(next[0], time);
+                Assert.assertEquals(next[0], x);
+                Assert.assertEquals(-next[0], y);
+                next[0]++;
+            });
+            if (drained == 0) {
+                Thread.yield();
+            }
+        }
+        producer.join();
+    }
+}
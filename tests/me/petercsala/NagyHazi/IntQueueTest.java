@@ -0,0 +1,41 @@
+package me.petercsala.NagyHazi;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class IntQueueTest {
+    @Test
+    public void order() {
+        IntQueue queue = new IntQueue(4);
+        for (int round = 0; round < 3; round++) {
+            queue.add(1);
+            queue.add(2);
+            queue.add(3);
+            Assert.assertEquals(1, queue.remove());
+            queue.add(4);
+            Assert.assertEquals(2, queue.remove());
+            Assert.assertEquals(3, queue.remove());
+            Assert.assertEquals(4, queue.remove());
+            Assert.assertTrue(queue.isEmpty());
+        }
+    }
+
+    @Test
+    public void grow() {
+        IntQueue queue = new IntQueue(2);
+        queue.add(-1);
+        queue.remove();
+        for (int i = 0; i < 100; i++) {
+            queue.add(i);
+        }
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(i, queue.remove());
+        }
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void removeFromEmpty() {
+        new IntQueue(4).remove();
+    }
+}
@@ -3,6 +3,7 @@ package me.petercsala.NagyHazi;
 import org.junit.Assert;
 
 import java.awt.*;
+import java.util.Random;
 
 public class MapTest {
     Map map;
@@ -44,9 +45,135 @@ public class MapTest {
         Assert.assertNull(map.getTile(new TilePos(1, 1)).getPlaceable());
     }
 
+    @org.junit.Test
+    public void getPlaced() {
+        Building building = new Building();
+        building.size = new Point(1, 1);
+        map.place(building, new TilePos(0, 0));
+        map.place(building, new TilePos(1, 0));
+        map.place(building, new TilePos(2, 0));
+        map.remove(new TilePos(0, 0));
+
+        Assert.assertEquals(2, map.getPlaced().size());
+        for (int i = 0; i < map.getPlaced().size(); i++) {
+            Assert.assertEquals(i, map.getPlaced().get(i).placedIndex);
+        }
+        Assert.assertSame(map.getTile(new TilePos(2, 0)).getPlaceable(), map.getPlaced().get(0));
+
+        map.reset();
+        Assert.assertTrue(map.getPlaced().isEmpty());
+        Assert.assertNull(map.getTile(new TilePos(1, 0)).getPlaceable());
+    }
+
+    @org.junit.Test
+    public void batchChecksRunningBalance() {
+        Building building = new Building();
+        building.size = new Point(1, 1);
+        building.cost = 400;
+
+        map.beginBatch();
+        Assert.assertTrue(map.isBatching());
+        map.place(building, new TilePos(0, 0));
+        map.place(building, new TilePos(1, 0));
+        Assert.assertEquals(200, map.getMoney());
+        Assert.assertFalse(map.canPlace(building, new TilePos(2, 0)));
+        map.commitBatch();
+
+        Assert.assertFalse(map.isBatching());
+        Assert.assertEquals(2, map.getPlaced().size());
+    }
+
+    @org.junit.Test(expected = RuntimeException.class)
+    public void commitWithoutBatch() {
+        map.commitBatch();
+    }
+
+    @org.junit.Test
+    public void largeMap() {
+        map = new Map(4096, 4096);
+        Assert.assertEquals(0, map.getChunkCount());
+
+        Building building = new Building();
+        building.size = new Point(2, 2);
+        map.place(building, new TilePos(4000, 31));
+        Assert.assertEquals(2, map.getChunkCount());
+        Assert.assertNotNull(map.getTile(new TilePos(4001, 32)).getPlaceable());
+        Assert.assertNull(map.getTile(new TilePos(10, 10)).getPlaceable());
+        Assert.assertFalse(map.canPlace(building, new TilePos(3999, 30)));
+
+        map.remove(new TilePos(4001, 32));
+        Assert.assertEquals(0, map.getChunkCount());
+
+        map.place(building, new TilePos(100, 100));
+        map.reset();
+        Assert.assertEquals(0, map.getChunkCount());
+    }
+
     @org.junit.Test
     public void worldToTileSpace() {
         TilePos result = map.worldToTileSpace(new Point(45, 30));
         Assert.assertEquals(result, new TilePos(2, 1));
     }
-}
\ No newline at end of file
+
+    @org.junit.Test
+    public void happinessMatchesFullScan() {
+        map = new Map(20, 20);
+        Road road = new Road();
+        road.size = new Point(1, 1);
+        road.cost = 0;
+        Building house = new Building(0, 4, -10, 5, -5);
+        house.size = new Point(2, 2);
+        house.cost = 0;
+        Building park = new Building(0, 0, 30, -20, 8);
+        park.size = new Point(1, 1);
+        park.cost = 0;
+        park.decorProvided = 300;
+        Placeable[] placeables = {road, road, house, park};
+
+        Random random = new Random(3);
+        for (int i = 0; i < 500; i++) {
+            TilePos pos = new TilePos(random.nextInt(20), random.nextInt(20));
+            Placeable placeable = placeables[random.nextInt(placeables.length)];
+            if (random.nextInt(4) > 0 && map.canPlace(placeable, pos)) {
+                map.place(placeable, pos);
+            } else {
+                map.remove(pos);
+            }
+
+            double happiness = 0;
+            double weight = 0;
+            for (int x = 0; x < 20; x++) {
+                for (int y = 0; y < 20; y++) {
+                    Placeable placed = map.getTile(new TilePos(x, y)).getPlaceable();
+                    if (placed != null && placed.getActualPos().equals(new TilePos(x, y))) {
+                        happiness += placed.getHappiness();
+                        weight += placed.getHappinessMultiplier();
+                    }
+                }
+            }
+            Assert.assertEquals(weight == 0 ? 0 : happiness / weight, map.getHappiness(), 1e-9);
+        }
+    }
+
+    @org.junit.Test
+    public void chunkVersions() {
+        map = new Map(100, 100);
+        Building building = new Building();
+        building.size = new Point(2, 2);
+        long[] before = map.getChunkVersions();
+        Assert.assertEquals(16, before.length);
+
+        map.place(building, new TilePos(31, 40));
+        long[] after = map.getChunkVersions();
+        for (int i = 0; i < after.length; i++) {
+            boolean touched = i == 4 || i == 5;
+            Assert.assertEquals(touched, before[i] != after[i]);
+        }
+
+        map.remove(new TilePos(5, 5));
+        Assert.assertArrayEquals(after, map.getChunkVersions());
+        map.remove(new TilePos(32, 41));
+        Assert.assertNotEquals(after[5], map.getChunkVersions()[5]);
+        Assert.assertEquals(after[0], map.getChunkVersions()[0]);
+    }
+}
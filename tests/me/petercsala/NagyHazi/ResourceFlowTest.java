@@ -0,0 +1,303 @@
+package me.petercsala.NagyHazi;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+
+public class ResourceFlowTest {
+    Map map;
+    List<Placeable> placeables;
+
+    @Before
+    public void setUp() {
+        map = new Map(16, 16);
+
+        Road road = new Road();
+        road.name = "Road";
+        road.size = new Point(1, 1);
+        road.cost = 0;
+
+        placeables = new ArrayList<>();
+        placeables.add(road);
+        placeables.add(building("House", 2, 2, -20, 15, -10, 3));
+        placeables.add(building("Plant", 2, 2, 40, -50, 20, 0));
+        placeables.add(building("Hut", 1, 1, -5, 5, -3, 1));
+        placeables.add(building("Factory", 3, 2, 30, -10, 5, 0));
+        placeables.add(building("Generator", 1, 1, 0, 0, 15, 0));
+        placeables.add(building("Office", 2, 1, 0, 0, -8, 0));
+    }
+
+    private Building building(String name, int width, int height, long water, long waste, long electricity, long accommodation) {
+        Building building = new Building(0, accommodation, water, waste, electricity);
+        building.name = name;
+        building.size = new Point(width, height);
+        building.cost = 0;
+        return building;
+    }
+
+    private List<String> resourceState() {
+        List<String> state = new ArrayList<>();
+        for (int x = 0; x < map.getMapSize().x; x++) {
+            for (int y = 0; y < map.getMapSize().y; y++) {
+                Placeable placeable = map.getTile(new TilePos(x, y)).getPlaceable();
+                if (!(placeable instanceof Building) || !placeable.getActualPos().equals(new TilePos(x, y))) {
+                    continue;
+                }
+                Building building = (Building) placeable;
+                state.add(x + "," + y + ": " + building.getReceivedWater() + " "
+                        + building.getHandledWaste() + " " + building.isElectricityProvided());
+            }
+        }
+        return state;
+    }
+
+    private static final int[] DX = {0, -1, 0, 1};
+    private static final int[] DY = {-1, 0, 1, 0};
+
+    private Placeable placeableAt(int x, int y) {
+        return map.getInstance(map.getInstanceId(x, y));
+    }
+
+    private List<TilePos> border(Placeable placeable) {
+        TilePos pos = placeable.getActualPos();
+        Point size = placeable.getSize();
+        List<TilePos> border = new ArrayList<>();
+        for (int i = 0; i < size.x; i++) {
+            border.add(new TilePos(pos.x + i, pos.y - 1));
+            border.add(new TilePos(pos.x + i, pos.y + size.y));
+        }
+        for (int i = 0; i < size.y; i++) {
+            border.add(new TilePos(pos.x - 1, pos.y + i));
+            border.add(new TilePos(pos.x + size.x, pos.y + i));
+        }
+        return border;
+    }
+
+    /**
+     * The full recompute of the baseline, walking every network from scratch over the whole map,
+     * with the rules changed since: every producer splits its output evenly between the roads it
+     * touches, a network hands out the output pooled on it in one walk from all of those roads,
+     * and the networks take turns in map order.
+     */
+    private void baselineRecompute() {
+        int width = map.getMapSize().x;
+        int height = map.getMapSize().y;
+        List<Placeable> buildings = new ArrayList<>();
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                Placeable placeable = placeableAt(x, y);
+                if (placeable != null && !placeable.isRoad() && placeable.getActualPos().equals(new TilePos(x, y))) {
+                    placeable.resetResources();
+                    buildings.add(placeable);
+                }
+            }
+        }
+
+        int[][] networks = new int[width][height];
+        List<Long> balances = new ArrayList<>();
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                if (!map.isRoad(x, y) || networks[x][y] != 0) {
+                    continue;
+                }
+                long balance = 0;
+                Queue<TilePos> toVisit = new LinkedList<>();
+                toVisit.add(new TilePos(x, y));
+                networks[x][y] = balances.size() + 1;
+                while (!toVisit.isEmpty()) {
+                    TilePos current = toVisit.remove();
+                    for (int i = 0; i < 4; i++) {
+                        int neighbourX = current.x + DX[i];
+                        int neighbourY = current.y + DY[i];
+                        Placeable neighbour = placeableAt(neighbourX, neighbourY);
+                        if (neighbour == null) {
+                            continue;
+                        }
+                        if (!neighbour.isRoad()) {
+                            balance += neighbour.getElectricityProduction();
+                        } else if (networks[neighbourX][neighbourY] == 0) {
+                            networks[neighbourX][neighbourY] = balances.size() + 1;
+                            toVisit.add(new TilePos(neighbourX, neighbourY));
+                        }
+                    }
+                }
+                balances.add(balance);
+            }
+        }
+
+        long[] water = new long[balances.size() + 1];
+        long[] waste = new long[balances.size() + 1];
+        List<Queue<TilePos>> starts = new ArrayList<>();
+        for (int i = 0; i <= balances.size(); i++) {
+            starts.add(new LinkedList<>());
+        }
+        for (Placeable building : buildings) {
+            long producedWater = Math.max(0, building.getWaterProduction());
+            long producedWaste = Math.min(0, building.getWasteProduction());
+            if (producedWater == 0 && producedWaste == 0) {
+                continue;
+            }
+            List<TilePos> roads = new ArrayList<>();
+            for (TilePos pos : border(building)) {
+                if (map.isRoad(pos.x, pos.y)) {
+                    roads.add(pos);
+                }
+            }
+            for (int i = 0; i < roads.size(); i++) {
+                int network = networks[roads.get(i).x][roads.get(i).y];
+                water[network] += producedWater * (i + 1) / roads.size() - producedWater * i / roads.size();
+                waste[network] += producedWaste * (i + 1) / roads.size() - producedWaste * i / roads.size();
+                starts.get(network).add(roads.get(i));
+            }
+        }
+
+        for (int network = 1; network <= balances.size(); network++) {
+            long waterLeft = water[network];
+            long wasteLeft = waste[network];
+            Queue<TilePos> toVisit = starts.get(network);
+            boolean[][] traversed = new boolean[width][height];
+            while (!toVisit.isEmpty() && (waterLeft > 0 || wasteLeft < 0)) {
+                TilePos current = toVisit.remove();
+                if (traversed[current.x][current.y]) {
+                    continue;
+                }
+                traversed[current.x][current.y] = true;
+                for (int i = 0; i < 4; i++) {
+                    Placeable neighbour = placeableAt(current.x + DX[i], current.y + DY[i]);
+                    if (neighbour == null) {
+                        continue;
+                    }
+                    if (neighbour.isRoad()) {
+                        toVisit.add(new TilePos(current.x + DX[i], current.y + DY[i]));
+                    } else {
+                        waterLeft = neighbour.pipeWater(waterLeft);
+                        wasteLeft = neighbour.handleWaste(wasteLeft);
+                    }
+                }
+            }
+        }
+
+        for (Placeable building : buildings) {
+            int supplying = 0;
+            for (TilePos pos : border(building)) {
+                if (map.isRoad(pos.x, pos.y)) {
+                    supplying = Math.max(supplying, networks[pos.x][pos.y]);
+                }
+            }
+            if (supplying != 0) {
+                building.setElectricityProvided(balances.get(supplying - 1) >= 0);
+            }
+        }
+    }
+
+    @Test
+    public void producerFeedsConsumer() {
+        map.place(placeables.get(2), new TilePos(1, 1));
+        for (int x = 1; x < 6; x++) {
+            map.place(placeables.get(0), new TilePos(x, 3));
+        }
+        map.place(placeables.get(1), new TilePos(4, 4));
+
+        Building house = (Building) map.getTile(new TilePos(4, 4)).getPlaceable();
+        Assert.assertEquals(20, house.getReceivedWater());
+        Assert.assertEquals(15, house.getHandledWaste());
+        Assert.assertTrue(house.isElectricityProvided());
+    }
+
+    @Test
+    public void removingRoadCutsSupply() {
+        map.place(placeables.get(2), new TilePos(1, 1));
+        for (int x = 1; x < 6; x++) {
+            map.place(placeables.get(0), new TilePos(x, 3));
+        }
+        map.place(placeables.get(1), new TilePos(4, 4));
+        map.remove(new TilePos(3, 3));
+
+        Building house = (Building) map.getTile(new TilePos(4, 4)).getPlaceable();
+        Assert.assertEquals(0, house.getReceivedWater());
+        Assert.assertEquals(0, house.getHandledWaste());
+    }
+
+    @Test
+    public void incrementalMatchesFullRecompute() {
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            TilePos pos = new TilePos(random.nextInt(16), random.nextInt(16));
+            if (random.nextInt(10) < 7) {
+                Placeable placeable = random.nextBoolean()
+                        ? placeables.get(0)
+                        : placeables.get(1 + random.nextInt(placeables.size() - 1));
+                if (!map.canPlace(placeable, pos)) {
+                    continue;
+                }
+                map.place(placeable, pos);
+            } else {
+                map.remove(pos);
+            }
+
+            List<String> incremental = resourceState();
+            baselineRecompute();
+            Assert.assertEquals("After edit " + i, resourceState(), incremental);
+        }
+    }
+
+    @Test
+    public void batchMatchesFullRecompute() {
+        Random random = new Random(7);
+        for (int batch = 0; batch < 100; batch++) {
+            map.beginBatch();
+            for (int i = 0; i < 20; i++) {
+                TilePos pos = new TilePos(random.nextInt(16), random.nextInt(16));
+                if (random.nextInt(10) < 7) {
+                    Placeable placeable = random.nextBoolean()
+                            ? placeables.get(0)
+                            : placeables.get(1 + random.nextInt(placeables.size() - 1));
+                    if (map.canPlace(placeable, pos)) {
+                        map.place(placeable, pos);
+                    }
+                } else {
+                    map.remove(pos);
+                }
+            }
+            map.commitBatch();
+
+            List<String> batched = resourceState();
+            double happiness = map.getHappiness();
+            baselineRecompute();
+            Assert.assertEquals("After batch " + batch, resourceState(), batched);
+            map.updateResourceFlow();
+            Assert.assertEquals("After batch " + batch, resourceState(), batched);
+            Assert.assertEquals(map.getHappiness(), happiness, 1e-9);
+        }
+    }
+
+    @Test
+    public void recomputeAllSolvesSuburbsIndependently() {
+        map = new Map(160, 160);
+        for (int suburbX = 0; suburbX < 160; suburbX += 8) {
+            for (int suburbY = 0; suburbY < 160; suburbY += 8) {
+                map.place(placeables.get(2), new TilePos(suburbX, suburbY));
+                for (int x = 0; x < 6; x++) {
+                    map.place(placeables.get(0), new TilePos(suburbX + x, suburbY + 2));
+                }
+                map.place(placeables.get(1), new TilePos(suburbX + 3, suburbY + 3));
+            }
+        }
+
+        List<String> incremental = resourceState();
+        map.updateResourceFlow();
+        Assert.assertEquals(incremental, resourceState());
+
+        Building house = (Building) map.getTile(new TilePos(155, 155)).getPlaceable();
+        Assert.assertEquals(20, house.getReceivedWater());
+        Assert.assertEquals(15, house.getHandledWaste());
+        Assert.assertTrue(house.isElectricityProvided());
+    }
+}
@@ -0,0 +1,70 @@
+package me.petercsala.NagyHazi;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.*;
+
+public class RoadNetworksTest {
+    Map map;
+    Road road;
+    Building generator;
+    Building consumer;
+
+    @Before
+    public void setUp() {
+        map = new Map(10, 10);
+
+        road = new Road();
+        road.name = "Road";
+        road.size = new Point(1, 1);
+        road.cost = 0;
+
+        generator = new Building(0, 0, 0, 0, 10);
+        generator.name = "Generator";
+        generator.size = new Point(1, 1);
+        generator.cost = 0;
+
+        consumer = new Building(0, 0, 0, 0, -5);
+        consumer.name = "Consumer";
+        consumer.size = new Point(1, 1);
+        consumer.cost = 0;
+
+        for (int x = 1; x < 8; x++) {
+            map.place(road, new TilePos(x, 2));
+        }
+    }
+
+    private Building consumerAt(int x, int y) {
+        return (Building) map.getTile(new TilePos(x, y)).getPlaceable();
+    }
+
+    @Test
+    public void balanceAcrossNetwork() {
+        map.place(generator, new TilePos(1, 1));
+        map.place(consumer, new TilePos(7, 3));
+        map.place(consumer, new TilePos(6, 3));
+        Assert.assertTrue(consumerAt(7, 3).isElectricityProvided());
+
+        map.place(consumer, new TilePos(5, 3));
+        Assert.assertFalse(consumerAt(7, 3).isElectricityProvided());
+        Assert.assertFalse(consumerAt(5, 3).isElectricityProvided());
+
+        map.remove(new TilePos(6, 3));
+        Assert.assertTrue(consumerAt(7, 3).isElectricityProvided());
+    }
+
+    @Test
+    public void splitNetwork() {
+        map.place(generator, new TilePos(1, 1));
+        map.place(consumer, new TilePos(7, 3));
+        Assert.assertTrue(consumerAt(7, 3).isElectricityProvided());
+
+        map.remove(new TilePos(4, 2));
+        Assert.assertFalse(consumerAt(7, 3).isElectricityProvided());
+
+        map.place(road, new TilePos(4, 2));
+        Assert.assertTrue(consumerAt(7, 3).isElectricityProvided());
+    }
+}
@@ -0,0 +1,273 @@
+package me.petercsala.NagyHazi;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class SaveFileTest {
+    Map map;
+    Building building;
+    Road road;
+    Building plant;
+
+    @Before
+    public void setUp() {
+        building = new Building(0, 3, -20, 15, -10);
+        building.name = "House";
+        building.size = new Point(2, 2);
+        building.cost = 100;
+        road = new Road();
+        road.name = "Road";
+        road.size = new Point(1, 1);
+        road.cost = 10;
+        plant = new Building(0, 0, 40, -50, 20);
+        plant.name = "Plant";
+        plant.size = new Point(2, 2);
+        plant.cost = 0;
+        Catalog.set(Arrays.asList(building, road, plant));
+        map = new Map(300, 200);
+    }
+
+    private SaveFile roundTrip(SaveFile save) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        save.write(output);
+        return SaveFile.read(new ByteArrayInputStream(output.toByteArray()));
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        map.place(building, new TilePos(250, 150));
+        map.place(road, new TilePos(252, 150));
+        map.place(road, new TilePos(3, 4));
+        map.place(building, new TilePos(0, 0));
+
+        SaveFile loaded = roundTrip(new SaveFile(map, new GameDate(2003, 7, 9)));
+        Map loadedMap = loaded.getMap();
+        Assert.assertEquals(new Point(300, 200), loadedMap.getMapSize());
+        Assert.assertEquals(map.getMoney(), loadedMap.getMoney());
+        Assert.assertEquals(6, loadedMap.getPopulation());
+        Assert.assertEquals(4, loadedMap.getPlaced().size());
+        Assert.assertEquals("House", loadedMap.getTile(new TilePos(251, 151)).getPlaceable().name);
+        Assert.assertTrue(loadedMap.isRoad(252, 150));
+        Assert.assertTrue(loadedMap.isRoad(3, 4));
+        Assert.assertEquals("2003.07.09", loaded.getGameDate().getDateString());
+    }
+
+    private List<String> resourceState(Map map) {
+        List<String> state = new ArrayList<>();
+        for (Placeable placeable : map.getPlaced()) {
+            if (placeable instanceof Building) {
+                Building house = (Building) placeable;
+                state.add(placeable.getActualPos().x + "," + placeable.getActualPos().y + ": "
+                        + house.getReceivedWater() + " " + house.getHandledWaste() + " " + house.isElectricityProvided());
+            }
+        }
+        Collections.sort(state);
+        return state;
+    }
+
+    @Test
+    public void loadedMapMatchesParallelSolve() throws IOException {
+        for (int suburbX = 0; suburbX < 280; suburbX += 10) {
+            for (int suburbY = 0; suburbY < 180; suburbY += 10) {
+                map.setMoney(100000);
+                map.place(plant, new TilePos(suburbX, suburbY));
+                for (int x = 0; x < 6; x++) {
+                    map.place(road, new TilePos(suburbX + x, suburbY + 2));
+                }
+                map.place(building, new TilePos(suburbX + 3, suburbY + 3));
+                if (suburbX % 20 == 0) {
+                    map.place(building, new TilePos(suburbX + 5, suburbY + 3));
+                }
+            }
+        }
+
+        Map loadedMap = roundTrip(new SaveFile(map, new GameDate())).getMap();
+        List<String> loaded = resourceState(loadedMap);
+        Assert.assertEquals(resourceState(map), loaded);
+        double happiness = loadedMap.getHappiness();
+        loadedMap.updateResourceFlow();
+        Assert.assertEquals(loaded, resourceState(loadedMap));
+        Assert.assertEquals(loadedMap.getHappiness(), happiness, 1e-9);
+        Assert.assertEquals(map.getHappiness(), happiness, 1e-9);
+    }
+
+    private void buildSuburbs(Map map) {
+        for (int suburbX = 0; suburbX < 280; suburbX += 40) {
+            for (int suburbY = 0; suburbY < 180; suburbY += 40) {
+                map.setMoney(100000);
+                map.place(plant, new TilePos(suburbX + 30, suburbY + 30));
+                for (int x = 0; x < 6; x++) {
+                    map.place(road, new TilePos(suburbX + 30 + x, suburbY + 32));
+                }
+                map.place(building, new TilePos(suburbX + 33, suburbY + 33));
+            }
+        }
+    }
+
+    @Test
+    public void chunksDecodedWhenNeeded() throws IOException {
+        buildSuburbs(map);
+        Map loadedMap = roundTrip(new SaveFile(map, new GameDate())).getMap();
+        Assert.assertEquals(0, loadedMap.getChunkCount());
+        Assert.assertEquals(map.getPopulation(), loadedMap.getPopulation());
+        Assert.assertEquals(map.getMoney(), loadedMap.getMoney());
+        Assert.assertEquals(map.getHappiness(), loadedMap.getHappiness(), 1e-9);
+
+        Assert.assertTrue(loadedMap.isRoad(32, 32));
+        int decodedChunks = loadedMap.getChunkCount();
+        Assert.assertTrue(decodedChunks > 0 && decodedChunks <= 4);
+        Building house = (Building) loadedMap.getInstance(loadedMap.getInstanceId(34, 34));
+        Assert.assertEquals(20, house.getReceivedWater());
+        Assert.assertTrue(house.isElectricityProvided());
+        Assert.assertEquals(5, loadedMap.getChunkInstances(1, 1).size());
+        Assert.assertEquals(decodedChunks, loadedMap.getChunkCount());
+
+        Assert.assertEquals(map.getPlaced().size(), loadedMap.getPlaced().size());
+        Assert.assertEquals(map.getChunkCount(), loadedMap.getChunkCount());
+        Assert.assertEquals(resourceState(map), resourceState(loadedMap));
+    }
+
+    @Test
+    public void editsAfterLazyLoad() throws IOException {
+        buildSuburbs(map);
+        Map loadedMap = roundTrip(new SaveFile(map, new GameDate())).getMap();
+        loadedMap.isRoad(32, 32);
+
+        map.remove(new TilePos(73, 72));
+        loadedMap.remove(new TilePos(73, 72));
+        map.place(building, new TilePos(31, 33));
+        loadedMap.place(building, new TilePos(31, 33));
+        Assert.assertTrue(loadedMap.getChunkCount() <= 8);
+        Assert.assertEquals(map.getPlaced().size(), loadedMap.getInstanceCount());
+
+        Map savedAgain = roundTrip(new SaveFile(loadedMap, new GameDate())).getMap();
+        Assert.assertTrue(loadedMap.getChunkCount() <= 8);
+        Assert.assertEquals(resourceState(map), resourceState(savedAgain));
+        Assert.assertEquals(resourceState(map), resourceState(loadedMap));
+        Assert.assertEquals(map.getPopulation(), loadedMap.getPopulation());
+        Assert.assertEquals(map.getHappiness(), loadedMap.getHappiness(), 1e-9);
+        Assert.assertEquals(map.getDecor(new TilePos(40, 40)), loadedMap.getDecor(new TilePos(40, 40)));
+    }
+
+    private long areaDecor(Map map, int x, int y) {
+        return ((Building) map.getInstance(map.getInstanceId(x, y))).getAreaDecor();
+    }
+
+    @Test
+    public void decorEditsAfterLazyLoad() throws IOException {
+        Building park = new Building();
+        park.name = "Park";
+        park.size = new Point(1, 1);
+        park.decorProvided = 1000;
+        Catalog.set(Arrays.asList(building, road, plant, park));
+        map.place(building, new TilePos(33, 40));
+        map.place(park, new TilePos(36, 40));
+        Map loadedMap = roundTrip(new SaveFile(map, new GameDate())).getMap();
+
+        map.place(park, new TilePos(30, 40));
+        loadedMap.place(park, new TilePos(30, 40));
+        Assert.assertEquals(areaDecor(map, 33, 40), areaDecor(loadedMap, 33, 40));
+        map.remove(new TilePos(36, 40));
+        loadedMap.remove(new TilePos(36, 40));
+        Assert.assertEquals(areaDecor(map, 33, 40), areaDecor(loadedMap, 33, 40));
+        Assert.assertEquals(map.getHappiness(), loadedMap.getHappiness(), 1e-9);
+        Assert.assertEquals(map.getDecor(new TilePos(33, 40)), loadedMap.getDecor(new TilePos(33, 40)));
+    }
+
+    @Test
+    public void emptyCellsTakeNoSpace() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new SaveFile(map, new GameDate()).write(output);
+        int empty = output.size();
+
+        for (int x = 0; x < 100; x++) {
+            map.setMoney(1000);
+            map.place(road, new TilePos(x, 100));
+        }
+        output = new ByteArrayOutputStream();
+        new SaveFile(map, new GameDate()).write(output);
+        Assert.assertTrue(output.size() - empty < 400);
+    }
+
+    @Test
+    public void openMapped() throws IOException {
+        map.place(building, new TilePos(40, 70));
+        map.place(road, new TilePos(3, 4));
+        map.place(road, new TilePos(4, 4));
+        File file = File.createTempFile("save", ".cbs");
+        file.deleteOnExit();
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            new SaveFile(map, new GameDate()).write(output);
+        }
+
+        SaveFile save = SaveFile.open(file.getPath());
+        Assert.assertEquals(map.getMoney(), save.getHeader().getMoney());
+        Assert.assertEquals(2, save.getInstanceCount(0, 0));
+        Assert.assertEquals(1, save.getInstanceCount(1, 2));
+        Assert.assertEquals(0, save.getInstanceCount(2, 2));
+        Assert.assertEquals(3, save.getMap().getPlaced().size());
+        Assert.assertTrue(save.getMap().isRoad(4, 4));
+        Assert.assertEquals("House", save.getMap().getTile(new TilePos(41, 71)).getPlaceable().name);
+    }
+
+    @Test(expected = IOException.class)
+    public void cutShort() throws IOException {
+        map.place(road, new TilePos(3, 4));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new SaveFile(map, new GameDate()).write(output);
+        byte[] bytes = Arrays.copyOf(output.toByteArray(), output.size() - 1);
+        SaveFile.read(new ByteArrayInputStream(bytes)).getMap();
+    }
+
+    @Test
+    public void invalidChunkLeftEmpty() throws IOException {
+        map.place(road, new TilePos(3, 4));
+        map.place(road, new TilePos(32, 0));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new SaveFile(map, new GameDate()).write(output);
+        byte[] bytes = output.toByteArray();
+        bytes[bytes.length - 2] = 0x7F;
+
+        SaveFile save = SaveFile.read(new ByteArrayInputStream(bytes));
+        Map loadedMap = save.getMap();
+        Assert.assertEquals(0, save.getInvalidChunkCount());
+        Assert.assertTrue(loadedMap.isRoad(3, 4));
+        Assert.assertEquals(0, save.getInvalidChunkCount());
+        Assert.assertFalse(loadedMap.isRoad(32, 0));
+        Assert.assertEquals(1, save.getInvalidChunkCount());
+        Assert.assertEquals(0, loadedMap.getChunkInstances(1, 0).size());
+    }
+
+    @Test(expected = IOException.class)
+    public void notASave() throws IOException {
+        SaveFile.read(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5, 6}));
+    }
+
+    @Test
+    public void varInt() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(output);
+        int[] values = {0, 1, 127, 128, 300, 16777216, Integer.MAX_VALUE};
+        for (int value : values) {
+            SaveFile.writeVarInt(data, value);
+        }
+        ByteBuffer input = ByteBuffer.wrap(output.toByteArray());
+        for (int value : values) {
+            Assert.assertEquals(value, SaveFile.readVarInt(input));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package me.petercsala.NagyHazi;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class SaveHeaderTest {
+    Map map;
+    Building house;
+    Building factory;
+    Road road;
+
+    @Before
+    public void setUp() {
+        house = new Building(0, 4, 0, 0, 0);
+        house.name = "House";
+        house.size = new Point(2, 2);
+        house.cost = 100;
+        factory = new Building();
+        factory.name = "Factory";
+        factory.size = new Point(1, 1);
+        factory.cost = 100;
+        road = new Road();
+        road.name = "Road";
+        road.size = new Point(1, 1);
+        road.cost = 10;
+        Catalog.set(Arrays.asList(house, factory, road));
+        map = new Map(128, 64);
+    }
+
+    private SaveHeader written(Map map) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new SaveFile(map, new GameDate()).write(output);
+        return SaveFile.read(new ByteArrayInputStream(output.toByteArray())).getHeader();
+    }
+
+    @Test
+    public void thumbnail() throws IOException {
+        map.place(house, new TilePos(10, 20));
+        map.place(factory, new TilePos(127 - 2, 0));
+        map.place(road, new TilePos(0, 63 - 1));
+        SaveHeader header = written(map);
+
+        Assert.assertEquals(SaveHeader.HOUSING, header.getThumbnailPixel(5, 20));
+        Assert.assertEquals(SaveHeader.HOUSING, header.getThumbnailPixel(5, 21));
+        Assert.assertEquals(SaveHeader.GROUND, header.getThumbnailPixel(6, 20));
+        Assert.assertEquals(SaveHeader.BUILDING, header.getThumbnailPixel(62, 0));
+        Assert.assertEquals(SaveHeader.ROAD, header.getThumbnailPixel(0, 62));
+        Assert.assertEquals(SaveHeader.GROUND, header.getThumbnailPixel(0, 0));
+    }
+
+    @Test
+    public void smallMapThumbnailCoversWholeTiles() throws IOException {
+        map = new Map(32, 16);
+        map.place(road, new TilePos(0, 0));
+        map.place(factory, new TilePos(5, 3));
+        SaveHeader header = written(map);
+
+        Assert.assertEquals(SaveHeader.ROAD, header.getThumbnailPixel(1, 0));
+        Assert.assertEquals(SaveHeader.ROAD, header.getThumbnailPixel(1, 3));
+        Assert.assertEquals(SaveHeader.GROUND, header.getThumbnailPixel(2, 0));
+        Assert.assertEquals(SaveHeader.BUILDING, header.getThumbnailPixel(10, 12));
+        Assert.assertEquals(SaveHeader.BUILDING, header.getThumbnailPixel(11, 15));
+        Assert.assertEquals(SaveHeader.GROUND, header.getThumbnailPixel(12, 15));
+        Assert.assertEquals(SaveHeader.GROUND, header.getThumbnailPixel(11, 16));
+    }
+
+    @Test
+    public void thumbnailOfLazilyLoadedMap() throws IOException {
+        map.place(house, new TilePos(10, 20));
+        map.place(road, new TilePos(100, 40));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new SaveFile(map, new GameDate()).write(output);
+        Map loadedMap = SaveFile.read(new ByteArrayInputStream(output.toByteArray())).getMap();
+        loadedMap.place(factory, new TilePos(90, 10));
+
+        SaveHeader header = written(loadedMap);
+        Assert.assertEquals(1, loadedMap.getChunkCount());
+        Assert.assertEquals(SaveHeader.HOUSING, header.getThumbnailPixel(5, 20));
+        Assert.assertEquals(SaveHeader.ROAD, header.getThumbnailPixel(50, 40));
+        Assert.assertEquals(SaveHeader.BUILDING, header.getThumbnailPixel(45, 10));
+    }
+
+    @Test
+    public void readOnlyHeader() throws IOException {
+        map.place(house, new TilePos(10, 20));
+        File file = File.createTempFile("save", ".cbs");
+        file.deleteOnExit();
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            new SaveFile(map, new GameDate(2001, 2, 3)).write(output);
+        }
+
+        SaveHeader header = SaveHeader.read(file.getPath());
+        Assert.assertEquals(new Point(128, 64), header.getMapSize());
+        Assert.assertEquals(900, header.getMoney());
+        Assert.assertEquals(4, header.getPopulation());
+        Assert.assertEquals("2001.02.03", header.getGameDate().getDateString());
+        Assert.assertEquals(SaveHeader.HOUSING, header.getThumbnailPixel(5, 20));
+        Assert.assertTrue(file.length() > SaveHeader.SIZE);
+    }
+
+    @Test(expected = IOException.class)
+    public void cutShort() throws IOException {
+        File file = File.createTempFile("save", ".cbs");
+        file.deleteOnExit();
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            output.write(new byte[]{0x43, 0x42, 0x53, 0x46, 0, 3, 0, 0});
+        }
+        SaveHeader.read(file.getPath());
+    }
+}
@@ -0,0 +1,206 @@
+package me.petercsala.NagyHazi;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.*;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+
+public class SaveWriterTest {
+    File directory;
+    SaveWriter saveWriter;
+    Map map;
+    Road road;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("saves").toFile();
+        saveWriter = new SaveWriter(directory, 2);
+        road = new Road();
+        road.name = "Road";
+        road.size = new Point(1, 1);
+        road.cost = 10;
+        Catalog.set(Collections.singletonList(road));
+        map = new Map(50, 50);
+    }
+
+    @After
+    public void tearDown() {
+        saveWriter.close();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private void autosave() {
+        Assert.assertTrue(saveWriter.autosave(map, new GameDate()));
+        saveWriter.flush();
+    }
+
+    private Map load(int slot) throws IOException {
+        Map loaded = SaveFile.open(saveWriter.getSlotPath(slot)).getMap();
+        if (new File(SaveDelta.getLogPath(saveWriter.getSlotPath(slot))).exists()) {
+            SaveDelta.replay(loaded, SaveDelta.getLogPath(saveWriter.getSlotPath(slot)));
+        }
+        return loaded;
+    }
+
+    @Test
+    public void replayDecodesOnlyEditedChunks() throws IOException {
+        map = new Map(320, 320);
+        for (int chunkX = 0; chunkX < 10; chunkX++) {
+            for (int chunkY = 0; chunkY < 10; chunkY++) {
+                map.setMoney(1000);
+                map.place(road, new TilePos(chunkX * Chunk.SIZE + 5, chunkY * Chunk.SIZE + 5));
+            }
+        }
+        autosave();
+        map.place(road, new TilePos(6, 5));
+        map.place(road, new TilePos(70, 101));
+        map.remove(new TilePos(5, 5));
+        autosave();
+
+        Map loaded = load(0);
+        Assert.assertEquals(2, loaded.getChunkCount());
+        Assert.assertTrue(loaded.isRoad(6, 5));
+        Assert.assertFalse(loaded.isRoad(5, 5));
+        Assert.assertTrue(loaded.isRoad(70, 101));
+        Assert.assertEquals(101, loaded.getInstanceCount());
+        Assert.assertEquals(2, loaded.getChunkCount());
+    }
+
+    @Test
+    public void deltasReplayOntoBase() throws IOException {
+        for (int y = 10; y < 15; y++) {
+            map.place(road, new TilePos(1, y));
+        }
+        map.place(road, new TilePos(1, 1));
+        autosave();
+        map.place(road, new TilePos(2, 1));
+        map.place(road, new TilePos(3, 1));
+        map.remove(new TilePos(1, 1));
+        autosave();
+        map.place(road, new TilePos(1, 2));
+        autosave();
+
+        Assert.assertFalse(new File(saveWriter.getSlotPath(1)).exists());
+        Assert.assertEquals(6, SaveFile.open(saveWriter.getSlotPath(0)).getMap().getPlaced().size());
+        Map loaded = load(0);
+        Assert.assertEquals(8, loaded.getPlaced().size());
+        Assert.assertFalse(loaded.isRoad(1, 1));
+        Assert.assertTrue(loaded.isRoad(3, 1));
+        Assert.assertTrue(loaded.isRoad(1, 2));
+        Assert.assertEquals(map.getMoney(), loaded.getMoney());
+        Assert.assertEquals(0, loaded.getJournal().size());
+    }
+
+    @Test
+    public void tornSegmentIgnored() throws IOException {
+        map.place(road, new TilePos(1, 1));
+        autosave();
+        map.place(road, new TilePos(2, 1));
+        autosave();
+        try (FileOutputStream output = new FileOutputStream(SaveDelta.getLogPath(saveWriter.getSlotPath(0)), true)) {
+            output.write(new byte[]{0x43, 0x42, 0x53, 0x44, 0, 0, 0, 40, 1, 2, 3});
+        }
+
+        Assert.assertEquals(2, load(0).getPlaced().size());
+    }
+
+    @Test
+    public void compactionRotatesSlots() throws IOException {
+        for (int i = 0; i <= SaveWriter.MAX_DELTAS; i++) {
+            map.place(road, new TilePos(i, 1));
+            autosave();
+        }
+        Assert.assertFalse(new File(saveWriter.getSlotPath(1)).exists());
+        map.place(road, new TilePos(20, 1));
+        autosave();
+
+        Assert.assertTrue(new File(saveWriter.getSlotPath(1)).exists());
+        Assert.assertFalse(new File(SaveDelta.getLogPath(saveWriter.getSlotPath(1))).exists());
+        Assert.assertEquals(SaveWriter.MAX_DELTAS + 1, load(0).getPlaced().size());
+        Assert.assertEquals(SaveWriter.MAX_DELTAS + 2, load(1).getPlaced().size());
+
+        for (int i = 0; i <= SaveWriter.MAX_DELTAS; i++) {
+            autosave();
+        }
+        Assert.assertFalse(new File(SaveDelta.getLogPath(saveWriter.getSlotPath(0))).exists());
+        Assert.assertEquals(SaveWriter.MAX_DELTAS + 2, load(0).getPlaced().size());
+    }
+
+    @Test
+    public void newMapSavedInFull() throws IOException {
+        map.place(road, new TilePos(1, 1));
+        autosave();
+        map = new Map(50, 50);
+        autosave();
+
+        Assert.assertEquals(1, load(0).getPlaced().size());
+        Assert.assertEquals(0, load(1).getPlaced().size());
+    }
+
+    @Test
+    public void failedAppendSavesInFull() throws IOException {
+        map.place(road, new TilePos(1, 1));
+        autosave();
+        Assert.assertTrue(new File(SaveDelta.getLogPath(saveWriter.getSlotPath(0))).mkdir());
+        map.place(road, new TilePos(2, 1));
+        autosave();
+        map.place(road, new TilePos(3, 1));
+        autosave();
+
+        Assert.assertEquals(3, load(1).getPlaced().size());
+        Assert.assertFalse(new File(SaveDelta.getLogPath(saveWriter.getSlotPath(1))).exists());
+    }
+
+    @Test
+    public void failedFullSaveSavesInFullAgain() throws IOException {
+        Assert.assertTrue(new File(saveWriter.getSlotPath(0)).mkdir());
+        Assert.assertTrue(new File(saveWriter.getSlotPath(0), "keep").createNewFile());
+        map.place(road, new TilePos(1, 1));
+        autosave();
+        map.place(road, new TilePos(2, 1));
+        autosave();
+
+        Assert.assertEquals(2, load(1).getPlaced().size());
+        Assert.assertFalse(new File(SaveDelta.getLogPath(saveWriter.getSlotPath(1))).exists());
+        Assert.assertTrue(new File(saveWriter.getSlotPath(0), "keep").delete());
+    }
+
+    @Test
+    public void failedSaveKeepsLog() throws IOException {
+        String path = new File(directory, "manual.cbs").getPath();
+        File log = new File(SaveDelta.getLogPath(path));
+        Assert.assertTrue(log.createNewFile());
+        Assert.assertTrue(new File(path).mkdir());
+        Assert.assertTrue(new File(path, "keep").createNewFile());
+        saveWriter.save(new SaveFile(map, new GameDate()), path);
+        saveWriter.flush();
+
+        Assert.assertTrue(log.exists());
+        Assert.assertTrue(new File(path, "keep").delete());
+    }
+
+    @Test
+    public void saveCopiesState() throws IOException {
+        map.place(road, new TilePos(1, 1));
+        SaveFile save = new SaveFile(map, new GameDate());
+        map.place(road, new TilePos(2, 1));
+        String path = new File(directory, "manual.cbs").getPath();
+        saveWriter.save(save, path);
+        saveWriter.flush();
+
+        Assert.assertEquals(1, SaveFile.open(path).getMap().getPlaced().size());
+    }
+}
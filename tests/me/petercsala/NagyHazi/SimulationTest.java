@@ -0,0 +1,137 @@
+package me.petercsala.NagyHazi;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.*;
+import java.util.Collections;
+
+public class SimulationTest {
+    Simulation simulation;
+    Building building;
+
+    @Before
+    public void setUp() {
+        simulation = new Simulation(new Map(10, 10));
+        building = new Building();
+        building.size = new Point(1, 1);
+        building.cost = 100;
+        Catalog.set(Collections.singletonList(building));
+    }
+
+    @Test
+    public void commandsRunOnTick() {
+        simulation.submit(state -> state.getMap().place(building, new TilePos(1, 1)));
+        Assert.assertTrue(simulation.getMap().getPlaced().isEmpty());
+
+        Assert.assertEquals(0, simulation.getSnapshot().getSlice(0, 0).getCount());
+
+        simulation.tick();
+        Assert.assertEquals(1, simulation.getMap().getPlaced().size());
+        FrameSnapshot frame = simulation.getSnapshot();
+        Assert.assertEquals(1, frame.getSlice(0, 0).getCount());
+        Assert.assertEquals(1, frame.getSlice(0, 0).getX(0));
+        Assert.assertEquals(-1, frame.getSlice(0, 0).getBitMask(0));
+        Assert.assertEquals(900, frame.getMoney());
+    }
+
+    @Test
+    public void editsRunOnTickInOneBatch() {
+        Assert.assertTrue(simulation.submitPlace(System.nanoTime(), 0, new TilePos(1, 1)));
+        Assert.assertTrue(simulation.submitPlace(System.nanoTime(), 0, new TilePos(3, 1)));
+        Assert.assertTrue(simulation.submitRemove(System.nanoTime(), new TilePos(1, 1)));
+        Assert.assertTrue(simulation.getMap().getPlaced().isEmpty());
+
+        simulation.tick();
+        Assert.assertEquals(1, simulation.getMap().getPlaced().size());
+        Assert.assertEquals(new TilePos(3, 1), simulation.getMap().getPlaced().get(0).getActualPos());
+        Assert.assertTrue(simulation.getMap().isBatching());
+        Assert.assertEquals(800, simulation.getSnapshot().getMoney());
+
+        Assert.assertTrue(simulation.submitCommit(System.nanoTime()));
+        simulation.tick();
+        Assert.assertFalse(simulation.getMap().isBatching());
+    }
+
+    @Test
+    public void tooManyEditsAreRefused() {
+        for (int i = 0; i < Simulation.INPUT_CAPACITY; i++) {
+            Assert.assertTrue(simulation.submitRemove(System.nanoTime(), new TilePos(1, 1)));
+        }
+        Assert.assertFalse(simulation.submitCommit(System.nanoTime()));
+        simulation.tick();
+        Assert.assertTrue(simulation.submitCommit(System.nanoTime()));
+    }
+
+    @Test
+    public void viewLimitsSnapshot() {
+        simulation = new Simulation(new Map(200, 200));
+        Assert.assertNull(simulation.getSnapshot().getSlice(3, 3));
+
+        Assert.assertTrue(simulation.submitView(new Rectangle(100, 100, 40, 30)));
+        simulation.tick();
+        FrameSnapshot frame = simulation.getSnapshot();
+        Assert.assertNull(frame.getSlice(1, 1));
+        Assert.assertNotNull(frame.getSlice(2, 2));
+        Assert.assertNotNull(frame.getSlice(5, 5));
+        Assert.assertNull(frame.getSlice(6, 5));
+    }
+
+    @Test
+    public void unchangedTicksKeepSnapshot() {
+        FrameSnapshot frame = simulation.getSnapshot();
+        simulation.tick();
+        simulation.tick();
+        Assert.assertSame(frame, simulation.getSnapshot());
+
+        simulation.submit(state -> { });
+        simulation.tick();
+        Assert.assertNotSame(frame, simulation.getSnapshot());
+    }
+
+    @Test
+    public void refusedInputsKeepSnapshot() {
+        Assert.assertTrue(simulation.submitPlace(System.nanoTime(), 0, new TilePos(1, 1)));
+        simulation.tick();
+        FrameSnapshot frame = simulation.getSnapshot();
+
+        Assert.assertTrue(simulation.submitPlace(System.nanoTime(), 0, new TilePos(1, 1)));
+        Assert.assertTrue(simulation.submitRemove(System.nanoTime(), new TilePos(5, 5)));
+        Assert.assertTrue(simulation.submitView(new Rectangle(0, 0, 0, 0)));
+        simulation.tick();
+        Assert.assertSame(frame, simulation.getSnapshot());
+
+        Assert.assertTrue(simulation.submitCommit(System.nanoTime()));
+        simulation.tick();
+        Assert.assertNotSame(frame, simulation.getSnapshot());
+        frame = simulation.getSnapshot();
+
+        Assert.assertTrue(simulation.submitCommit(System.nanoTime()));
+        Assert.assertTrue(simulation.submitRemove(System.nanoTime(), new TilePos(3, 3)));
+        simulation.tick();
+        Assert.assertSame(frame, simulation.getSnapshot());
+        Assert.assertFalse(simulation.getMap().isBatching());
+    }
+
+    @Test
+    public void ticksAdvanceDate() {
+        String start = simulation.getGameDate().getDateString();
+        for (int i = 0; i < 3 / Simulation.TICK_LENGTH + 1; i++) {
+            simulation.tick();
+        }
+        Assert.assertNotEquals(start, simulation.getGameDate().getDateString());
+    }
+
+    @Test
+    public void threadRunsCommands() throws InterruptedException {
+        simulation.start();
+        simulation.submitPlace(System.nanoTime(), 0, new TilePos(1, 1));
+        for (int i = 0; i < 100 && simulation.getSnapshot().getSlice(0, 0).getCount() == 0; i++) {
+            Thread.sleep(10);
+        }
+        simulation.stop();
+        Assert.assertEquals(1, simulation.getSnapshot().getSlice(0, 0).getCount());
+        Assert.assertEquals(900, simulation.getSnapshot().getMoney());
+    }
+}
@@ -0,0 +1,87 @@
+package me.petercsala.NagyHazi;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class SpatialIndexTest {
+    Map map;
+    List<Building> buildings;
+
+    @Before
+    public void setUp() {
+        map = new Map(40, 40);
+        buildings = new ArrayList<>();
+        long[] decors = {0, 1, 30, 200, 1000};
+        for (long decor : decors) {
+            Building building = new Building(0, 1, 0, 0, 0);
+            building.name = "Decor " + decor;
+            building.size = new Point(1 + (int) (decor % 3), 2);
+            building.cost = 0;
+            building.decorProvided = decor;
+            buildings.add(building);
+        }
+    }
+
+    @Test
+    public void decorRadius() {
+        for (Building building : buildings) {
+            Placeable placed = building.clone(new TilePos(5, 5));
+            Point center = placed.getCenter();
+            int radius = (int) Math.floor(placed.getDecorRadius()) + 1;
+            Assert.assertEquals(0, placed.getProvidedDecorAt(new Point(center.x + radius, center.y)));
+        }
+    }
+
+    @Test
+    public void query() {
+        SpatialIndex index = new SpatialIndex(new Point(100, 100));
+        Placeable near = buildings.get(0).clone(new TilePos(10, 10));
+        Placeable far = buildings.get(0).clone(new TilePos(60, 60));
+        index.add(near);
+        index.add(far);
+
+        List<Placeable> found = index.query(new Point(160, 160), 100);
+        Assert.assertEquals(1, found.size());
+        Assert.assertSame(near, found.get(0));
+
+        index.remove(near);
+        Assert.assertTrue(index.query(new Point(160, 160), 100).isEmpty());
+    }
+
+    @Test
+    public void decorMatchesAllPairs() {
+        Random random = new Random(7);
+        for (int i = 0; i < 500; i++) {
+            TilePos pos = new TilePos(random.nextInt(40), random.nextInt(40));
+            Building building = buildings.get(random.nextInt(buildings.size()));
+            if (random.nextInt(3) > 0 && map.canPlace(building, pos)) {
+                map.place(building, pos);
+            } else {
+                map.remove(pos);
+            }
+        }
+
+        List<Placeable> placed = new ArrayList<>();
+        for (int x = 0; x < 40; x++) {
+            for (int y = 0; y < 40; y++) {
+                Placeable placeable = map.getTile(new TilePos(x, y)).getPlaceable();
+                if (placeable != null && placeable.getActualPos().equals(new TilePos(x, y))) {
+                    placed.add(placeable);
+                }
+            }
+        }
+        for (Placeable placeable : placed) {
+            long expected = 0;
+            for (Placeable other : placed) {
+                expected += other.getProvidedDecorAt(placeable.getCenter());
+            }
+            Assert.assertEquals(expected, ((Building) placeable).getAreaDecor());
+        }
+    }
+}